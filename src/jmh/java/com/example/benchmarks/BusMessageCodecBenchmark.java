@@ -0,0 +1,93 @@
+package com.example.benchmarks;
+
+import com.example.entities.User;
+import com.example.messaging.BusMessage;
+import com.example.messaging.BusMessageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the binary encoding of the user events with a JSON encoding by Jackson
+ * Run with -prof gc to compare the allocations too
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusMessageCodecBenchmark
+{
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BusMessage message;
+    private ByteBuffer buffer;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        User user = new User("John", "Smith", "johnny", "john.smith@gmail.com", "qwerty", "France");
+        message = new BusMessage(BusMessage.USER_UPDATE, user);
+        buffer = ByteBuffer.allocateDirect(BusMessageCodec.maxEncodedSize(message));
+
+        ByteBuffer encoded = ByteBuffer.allocate(BusMessageCodec.maxEncodedSize(message));
+        binary = new byte[BusMessageCodec.encode(message, encoded)];
+        encoded.flip();
+        encoded.get(binary);
+        json = encodeJson();
+    }
+
+    @Benchmark
+    public int encodeBinary()
+    {
+        buffer.clear();
+        return BusMessageCodec.encode(message, buffer);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException
+    {
+        User user = (User) message.getPayload();
+        Map<String, Object> event = new HashMap<>();
+        event.put("topic", message.getTopic());
+        event.put("email", user.getEmail());
+        event.put("firstname", user.getFirstname());
+        event.put("lastname", user.getLastname());
+        event.put("nickname", user.getNickname());
+        event.put("country", user.getCountry());
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public BusMessage decodeBinary()
+    {
+        return BusMessageCodec.decode(ByteBuffer.wrap(binary));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public BusMessage decodeJson() throws IOException
+    {
+        Map<String, Object> event = objectMapper.readValue(json, Map.class);
+        User user = new User((String) event.get("firstname"), (String) event.get("lastname"),
+                (String) event.get("nickname"), (String) event.get("email"), null, (String) event.get("country"));
+        return new BusMessage((String) event.get("topic"), user);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.benchmarks;
+
+import com.example.controllers.UserController;
+import com.example.entities.User;
+import com.example.services.UserServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The failure path of a request : a user which does not exist and an invalid email,
+ * next to a user found for reference
+ * Add -prof gc to the JMH arguments to compare the memory allocated by each call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotFoundBenchmark
+{
+    private static final int USERS = 1000;
+
+    private UserController userController;
+
+    @Setup
+    public void setUp()
+    {
+        UserServices userServices = new UserServices();
+        for (int i = 0; i < USERS; i++)
+        {
+            userServices.createUser(new User("John", "Smith", "johnny" + i, "john.smith" + i + "@gmail.com",
+                    "qwerty", "France"));
+        }
+        userController = new UserController(userServices);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getUser()
+    {
+        return userController.getUser("john.smith1@gmail.com");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getMissingUser()
+    {
+        return userController.getUser("jane.doe@gmail.com");
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getInvalidEmail()
+    {
+        return userController.getUser("jane.doe");
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.benchmarks;
+
+import com.example.entities.Criteria;
+import com.example.entities.StringPool;
+import com.example.entities.User;
+import com.example.services.UserServices;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measure the heap retained per user by the service, its indexes included
+ * The heap is not something JMH measures, so this is a plain program, run with ./gradlew footprint
+ * e.g ./gradlew footprint -Pusers=100000
+ *
+ * The per-user HashMap copy of the fields the service used to keep for the filters is measured
+ * as well, it is the memory the columns of the filterable fields save.
+ * The names and countries of the users stored are shared by the {@link StringPool} of the service,
+ * whose hit rates are printed.
+ */
+public class UserFootprintBenchmark
+{
+    private static final String[] COUNTRIES = {"France", "England", "Spain", "Germany", "Italy", "Portugal"};
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long empty = usedHeap();
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            users.add(new User("first" + (i % 5000), "last" + (i % 20000), "nick" + i,
+                    "user" + i + "@gmail.com", "password" + i, COUNTRIES[i % COUNTRIES.length]));
+        }
+        long withUsers = usedHeap();
+        report("users alone", withUsers - empty, count);
+
+        List<Map<String, Object>> copies = new ArrayList<>(count);
+        for (User user : users)
+        {
+            copies.add(user.toMap());
+        }
+        report("HashMap copies of the fields", usedHeap() - withUsers, count);
+        copies = null;
+
+        long beforeService = usedHeap();
+        UserServices userServices = new UserServices();
+        for (User user : users)
+        {
+            userServices.createUser(user);
+        }
+        report("service and indexes", usedHeap() - beforeService, count);
+
+        for (Map.Entry<Criteria, StringPool> pool : userServices.getStringPools().getPools().entrySet())
+        {
+            System.out.println(String.format("%-30s %,15d values %,7.1f%% hits", pool.getKey().getCriteriaName() + " pool",
+                    pool.getValue().getSize(), pool.getValue().getHitRate() * 100));
+        }
+
+        //
+        // Keep both alive until the last measure
+        //
+        System.out.println(users.size() + userServices.countUsers(null, null) + " users");
+    }
+
+    private static void report(String name, long bytes, int count)
+    {
+        System.out.println(String.format("%-30s %,15d bytes %,8d bytes/user", name, bytes, bytes / count));
+    }
+
+    private static long usedHeap()
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
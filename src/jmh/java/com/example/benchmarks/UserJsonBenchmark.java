@@ -0,0 +1,80 @@
+package com.example.benchmarks;
+
+import com.example.controllers.UserController;
+import com.example.entities.User;
+import com.example.services.UserServices;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP layer without the network : the JSON (de)serialization of the users,
+ * with the object mapper Spring MVC builds, and the controller answering a request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserJsonBenchmark
+{
+    private static final int USERS = 1000;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .findModulesViaServiceLoader(true).build();
+
+    private UserController userController;
+    private User user;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        UserServices userServices = new UserServices();
+        for (int i = 0; i < USERS; i++)
+        {
+            userServices.createUser(new User("John", "Smith", "johnny" + i, "john.smith" + i + "@gmail.com",
+                    "qwerty", "France"));
+        }
+        userController = new UserController(userServices);
+        user = userServices.getUser("john.smith0@gmail.com");
+        json = objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws IOException
+    {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User deserializeUser() throws IOException
+    {
+        return objectMapper.readValue(json, User.class);
+    }
+
+    @Benchmark
+    public byte[] getUserResponse() throws IOException
+    {
+        return objectMapper.writeValueAsBytes(userController.getUser("john.smith1@gmail.com").getBody());
+    }
+
+    @Benchmark
+    public byte[] getAllResponse() throws IOException
+    {
+        return objectMapper.writeValueAsBytes(userController.getAll(100, null).getBody());
+    }
+}
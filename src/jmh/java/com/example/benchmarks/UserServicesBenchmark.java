@@ -0,0 +1,187 @@
+package com.example.benchmarks;
+
+import com.example.entities.User;
+import com.example.entities.UserPage;
+import com.example.persistence.FsyncPolicy;
+import com.example.persistence.WriteAheadLog;
+import com.example.repositories.InMemoryUserRepository;
+import com.example.repositories.UserRepository;
+import com.example.services.UserServices;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The operations of the service, on a service already holding the given number of users
+ * Run with ./gradlew jmh -Pbenchmarks=UserServices -Pthreads=4 to share the service between threads,
+ * and compare the runs with 1, 2, 4... threads to measure how the operations scale
+ *
+ * A created user is deleted once measured, and a deleted user is created before, so that the number
+ * of users does not drift during the run. These fixtures run around each call, which JMH only
+ * advises for calls of a few microseconds at least, like these ones.
+ *
+ * The fsync parameter runs the service without the write-ahead log (off), or with the log forcing
+ * its records with the given policy, e.g. -Pfsync=off,periodic to compare the cost of the log.
+ * The users the service starts with are not written to the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class UserServicesBenchmark
+{
+    private static final String[] COUNTRIES = {"France", "England", "Spain", "Germany", "Italy", "Portugal"};
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    @Param({"off", "always", "periodic", "async"})
+    public String fsync;
+
+    private UserServices userServices;
+    private WriteAheadLog writeAheadLog;
+    private Path walDirectory;
+    private final AtomicLong temporaryUsers = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        UserRepository userRepository = new InMemoryUserRepository();
+        for (int i = 0; i < users; i++)
+        {
+            User user = user(i, COUNTRIES[i % COUNTRIES.length]);
+            userRepository.put(user.getEmail(), user);
+        }
+
+        if (!"off".equals(fsync))
+        {
+            walDirectory = Files.createTempDirectory("user-wal");
+            writeAheadLog = new WriteAheadLog(walDirectory, FsyncPolicy.valueOf(fsync.toUpperCase()), 10);
+        }
+        userServices = new UserServices(userRepository, Optional.ofNullable(writeAheadLog), Optional.empty());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        if (writeAheadLog != null)
+        {
+            writeAheadLog.close();
+            Files.walk(walDirectory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A user deleted by the call, which is created before it
+     */
+    @State(Scope.Thread)
+    public static class UserToDelete
+    {
+        private User user;
+
+        @Setup(Level.Invocation)
+        public void create(UserServicesBenchmark benchmark)
+        {
+            user = benchmark.temporaryUser();
+            benchmark.userServices.createUser(user);
+        }
+    }
+
+    /**
+     * A user created by the call, which is deleted after it
+     */
+    @State(Scope.Thread)
+    public static class UserToCreate
+    {
+        private UserServicesBenchmark benchmark;
+        private User user;
+
+        @Setup(Level.Invocation)
+        public void setUp(UserServicesBenchmark benchmark)
+        {
+            this.benchmark = benchmark;
+            user = benchmark.temporaryUser();
+        }
+
+        @TearDown(Level.Invocation)
+        public void delete()
+        {
+            benchmark.userServices.deleteUser(user.getEmail());
+        }
+    }
+
+    @Benchmark
+    public User createUser(UserToCreate toCreate)
+    {
+        return userServices.createUser(toCreate.user);
+    }
+
+    @Benchmark
+    public User updateUser()
+    {
+        int i = ThreadLocalRandom.current().nextInt(users);
+        return userServices.updateUser(user(i, COUNTRIES[ThreadLocalRandom.current().nextInt(COUNTRIES.length)]));
+    }
+
+    @Benchmark
+    public User getUser()
+    {
+        return userServices.getUser(email(ThreadLocalRandom.current().nextInt(users)));
+    }
+
+    @Benchmark
+    public UserPage getAllUsers()
+    {
+        return userServices.getAllUsers(null, null, PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public UserPage getAllUsersWithCriteria()
+    {
+        return userServices.getAllUsers("country", "spain", PAGE_SIZE, null);
+    }
+
+    @Benchmark
+    public boolean deleteUser(UserToDelete toDelete)
+    {
+        return userServices.deleteUser(toDelete.user.getEmail());
+    }
+
+    private User temporaryUser()
+    {
+        long id = temporaryUsers.incrementAndGet();
+        return new User("Temporary", "User", "temporary" + id, "temporary" + id + "@gmail.com", "qwerty", "France");
+    }
+
+    private static User user(int i, String country)
+    {
+        return new User("first" + (i % 5000), "last" + (i % 20000), "nick" + i, email(i), "password" + i, country);
+    }
+
+    private static String email(int i)
+    {
+        return "user" + i + "@gmail.com";
+    }
+}
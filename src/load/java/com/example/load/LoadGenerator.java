@@ -0,0 +1,394 @@
+package com.example.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drive a mixed workload against a running instance of the service, at a given rate,
+ * then print the latencies of each operation, run with ./gradlew loadTest
+ * e.g ./gradlew loadTest -Prate=2000 -Pduration=60 -Pthreads=32 -Pmix=get=80,update=20
+ *
+ * The requests are sent on a fixed schedule, the i-th one being due i / rate seconds after the start,
+ * whatever the time the previous ones took. The latency of a request is measured from the time it was due,
+ * not from the time it was actually sent : when the service stalls, the requests queued behind the stall are
+ * reported with the time they waited, rather than being sent late and reported as fast (the coordinated omission).
+ * The threads only bound the number of requests in flight, if they are all busy the requests fall behind
+ * and their latency grows, as it would for real clients.
+ *
+ * url = the root of the service, http://localhost:8585 by default
+ * rate = the requests per second, 1000 by default
+ * warmup = the seconds of requests sent before the measure, not recorded, 10 by default
+ * duration = the seconds of measure, 30 by default
+ * threads = the maximum number of requests in flight, 16 by default
+ * users = the users created before the measure, read and updated by the workload, 10000 by default
+ * mix = the weight of each operation, e.g. get=80,update=20, see {@link UserOperation} for the default ones
+ */
+public class LoadGenerator
+{
+    private static final String[] COUNTRIES = {"France", "England", "Spain", "Germany", "Italy", "Portugal"};
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final String url;
+    private final int rate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final int threads;
+    private final int users;
+    private final UserOperation[] schedule;
+
+    //
+    // The users of a run get their own emails and nicknames, so that runs can follow each other
+    //
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong createdUsers = new AtomicLong();
+    private final Queue<String> deletableUsers = new ConcurrentLinkedQueue<>();
+
+    LoadGenerator(Map<String, String> arguments)
+    {
+        url = arguments.getOrDefault("url", "http://localhost:8585");
+        rate = Integer.parseInt(arguments.getOrDefault("rate", "1000"));
+        warmupSeconds = Integer.parseInt(arguments.getOrDefault("warmup", "10"));
+        durationSeconds = Integer.parseInt(arguments.getOrDefault("duration", "30"));
+        threads = Integer.parseInt(arguments.getOrDefault("threads", "16"));
+        users = Integer.parseInt(arguments.getOrDefault("users", "10000"));
+        schedule = schedule(arguments.get("mix"));
+        if (rate < 1 || warmupSeconds < 0 || durationSeconds < 1 || threads < 1 || users < 1)
+        {
+            throw new IllegalArgumentException("The rate, duration, threads and users must be positive");
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            if (equals < 0)
+            {
+                throw new IllegalArgumentException("The argument [" + arg + "] must be written name=value");
+            }
+            arguments.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadGenerator(arguments).run();
+    }
+
+    /**
+     * The operations in the proportions of their weights, an operation is picked at random among them
+     */
+    private static UserOperation[] schedule(String mix)
+    {
+        Map<UserOperation, Integer> weights = new EnumMap<>(UserOperation.class);
+        if (mix == null)
+        {
+            for (UserOperation operation : UserOperation.values())
+            {
+                weights.put(operation, operation.getDefaultWeight());
+            }
+        }
+        else
+        {
+            for (String weight : mix.split(","))
+            {
+                String[] parts = weight.split("=");
+                if (parts.length != 2)
+                {
+                    throw new IllegalArgumentException("The weight [" + weight + "] must be written operation=weight");
+                }
+                weights.put(UserOperation.fromName(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            }
+        }
+
+        List<UserOperation> schedule = new ArrayList<>();
+        for (Map.Entry<UserOperation, Integer> weight : weights.entrySet())
+        {
+            for (int i = 0; i < weight.getValue(); i++)
+            {
+                schedule.add(weight.getKey());
+            }
+        }
+        if (schedule.isEmpty())
+        {
+            throw new IllegalArgumentException("The mix [" + mix + "] must give a positive weight to an operation");
+        }
+        return schedule.toArray(new UserOperation[0]);
+    }
+
+    private void run() throws Exception
+    {
+        //
+        // Otherwise only 5 connections are kept alive, the others are opened for each request
+        //
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            System.out.println("Creating " + users + " users on " + url);
+            List<Future<?>> creations = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                int first = t;
+                creations.add(executor.submit(() ->
+                {
+                    for (int i = first; i < users; i += threads)
+                    {
+                        expectSuccess(send("POST", "/user/create", user(i, COUNTRIES[i % COUNTRIES.length])));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> creation : creations)
+            {
+                creation.get();
+            }
+
+            System.out.println("Sending " + rate + " requests/s for " + warmupSeconds + " s of warmup then "
+                    + durationSeconds + " s of measure, from " + threads + " threads");
+            long requests = (long) rate * (warmupSeconds + durationSeconds);
+            long warmupRequests = (long) rate * warmupSeconds;
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            AtomicLong nextRequest = new AtomicLong();
+            long start = System.nanoTime();
+            List<Future<Recording>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                workers.add(executor.submit(() -> work(nextRequest, requests, warmupRequests, start, intervalNanos)));
+            }
+
+            Recording total = new Recording();
+            for (Future<Recording> worker : workers)
+            {
+                total.add(worker.get());
+            }
+            report(total, System.nanoTime() - start - warmupRequests * intervalNanos);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Send the requests as they become due, until all of them have been sent
+     * The requests of the warmup are sent like the others, but not recorded
+     */
+    private Recording work(AtomicLong nextRequest, long requests, long warmupRequests, long start, long intervalNanos)
+    {
+        Recording recording = new Recording();
+        for (long i = nextRequest.getAndIncrement(); i < requests; i = nextRequest.getAndIncrement())
+        {
+            long due = start + i * intervalNanos;
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime())
+            {
+                LockSupport.parkNanos(wait);
+            }
+
+            UserOperation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            int status;
+            try
+            {
+                status = execute(operation);
+            }
+            catch (IOException exception)
+            {
+                status = -1;
+            }
+            if (i >= warmupRequests)
+            {
+                recording.record(operation, System.nanoTime() - due, status);
+            }
+        }
+        return recording;
+    }
+
+    private int execute(UserOperation operation) throws IOException
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+        switch (operation)
+        {
+            case CREATE:
+                return create();
+            case GET:
+                return send("GET", "/user/" + email(random.nextInt(users)), null);
+            case UPDATE:
+                return send("POST", "/user/update", user(random.nextInt(users), country));
+            case DELETE:
+                //
+                // Only the users created by the workload are deleted, when there is none left a user is created
+                //
+                String email = deletableUsers.poll();
+                return email == null ? create() : send("DELETE", "/user/" + email, null);
+            case SEARCH:
+                return send("GET", "/user/getUsers?criteria=country&value=" + country + "&limit=20", null);
+            case AUTOCOMPLETE:
+                return send("GET", "/user/autocomplete?field=nickname&limit=10&prefix="
+                        + encode(runId + "-" + random.nextInt(100)), null);
+            default:
+                throw new IllegalStateException("Unexpected operation " + operation);
+        }
+    }
+
+    private int create() throws IOException
+    {
+        long id = createdUsers.incrementAndGet();
+        String email = "load-" + runId + "-new" + id + "@example.com";
+        int status = send("POST", "/user/create", json("Load", "Created", runId + "-new" + id, email, "France"));
+        if (status == 200)
+        {
+            deletableUsers.add(email);
+        }
+        return status;
+    }
+
+    /**
+     * Send a request and read its whole response, so that the connection is kept alive for the next one
+     * @return the HTTP status of the response
+     */
+    private int send(String method, String path, String body) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream())
+            {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int status = connection.getResponseCode();
+        InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (input != null)
+        {
+            try (InputStream response = input)
+            {
+                byte[] buffer = new byte[8192];
+                while (response.read(buffer) >= 0)
+                {
+                    // drain
+                }
+            }
+        }
+        return status;
+    }
+
+    private static void expectSuccess(int status)
+    {
+        if (status != 200)
+        {
+            throw new IllegalStateException("The creation of a user failed with the status " + status);
+        }
+    }
+
+    private String user(int i, String country)
+    {
+        return json("Load", "User" + (i % 1000), runId + "-" + i, email(i), country);
+    }
+
+    private String email(int i)
+    {
+        return "load-" + runId + "-" + i + "@example.com";
+    }
+
+    private static String json(String firstname, String lastname, String nickname, String email, String country)
+    {
+        return "{\"firstname\":\"" + firstname + "\",\"lastname\":\"" + lastname + "\",\"nickname\":\"" + nickname
+                + "\",\"email\":\"" + email + "\",\"password\":\"load\",\"country\":\"" + country + "\"}";
+    }
+
+    private static String encode(String value) throws IOException
+    {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+    }
+
+    private void report(Recording total, long elapsedNanos)
+    {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("%-14s %9s %8s %10s %10s %10s %10s %10s", "operation", "requests",
+                "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        Histogram all = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long allErrors = 0;
+        for (UserOperation operation : UserOperation.values())
+        {
+            Histogram histogram = total.latencies.get(operation);
+            long errors = total.errors[operation.ordinal()];
+            if (histogram.getTotalCount() > 0)
+            {
+                print(operation.getOperationName(), histogram, errors, seconds);
+                all.add(histogram);
+                allErrors += errors;
+            }
+        }
+        print("all", all, allErrors, seconds);
+        System.out.println(String.format("Target %d req/s, the latencies are measured from the time each request"
+                + " was due", rate));
+    }
+
+    private static void print(String name, Histogram histogram, long errors, double seconds)
+    {
+        System.out.println(String.format("%-14s %9d %8d %10.1f %10.3f %10.3f %10.3f %10.3f", name,
+                histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0));
+    }
+
+    /**
+     * The latencies, in microseconds, and the errors of each operation, recorded by a single thread
+     */
+    private static final class Recording
+    {
+        private final Map<UserOperation, Histogram> latencies = new EnumMap<>(UserOperation.class);
+        private final long[] errors = new long[UserOperation.values().length];
+
+        private Recording()
+        {
+            for (UserOperation operation : UserOperation.values())
+            {
+                latencies.put(operation, new Histogram(HIGHEST_LATENCY_MICROS, 3));
+            }
+        }
+
+        private void record(UserOperation operation, long latencyNanos, int status)
+        {
+            latencies.get(operation).recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos),
+                    HIGHEST_LATENCY_MICROS));
+            if (status < 200 || status >= 300)
+            {
+                errors[operation.ordinal()]++;
+            }
+        }
+
+        private void add(Recording other)
+        {
+            for (UserOperation operation : UserOperation.values())
+            {
+                latencies.get(operation).add(other.latencies.get(operation));
+                errors[operation.ordinal()] += other.errors[operation.ordinal()];
+            }
+        }
+    }
+}
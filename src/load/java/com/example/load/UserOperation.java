@@ -0,0 +1,46 @@
+package com.example.load;
+
+/**
+ * The requests of the workload, each one is reported on its own
+ */
+enum UserOperation
+{
+    CREATE("create", 10),
+    GET("get", 50),
+    UPDATE("update", 15),
+    DELETE("delete", 5),
+    SEARCH("search", 15),
+    AUTOCOMPLETE("autocomplete", 5);
+
+    private final String operationName;
+    private final int defaultWeight;
+
+    UserOperation(String operationName, int defaultWeight)
+    {
+        this.operationName = operationName;
+        this.defaultWeight = defaultWeight;
+    }
+
+    String getOperationName()
+    {
+        return operationName;
+    }
+
+    int getDefaultWeight()
+    {
+        return defaultWeight;
+    }
+
+    static UserOperation fromName(String name)
+    {
+        for (UserOperation operation : values())
+        {
+            if (operation.operationName.equals(name))
+            {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("The operation [" + name + "] does not exist, it must be one of" +
+                " create, get, update, delete, search or autocomplete");
+    }
+}
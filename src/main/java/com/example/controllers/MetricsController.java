@@ -0,0 +1,79 @@
+package com.example.controllers;
+
+import com.example.entities.Criteria;
+import com.example.entities.StringPool;
+import com.example.entities.StringPools;
+import com.example.messaging.MyFakeMessageBus;
+import com.example.metrics.RequestMetricsInterceptor;
+import com.example.services.UserServices;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A Rest Controller exposing the metrics of the service
+ * Reading them does not walk the users nor the indexes, it can be polled often
+ */
+@RestController
+public class MetricsController
+{
+    private final UserServices userServices;
+    private final MyFakeMessageBus messageBus;
+    private final RequestMetricsInterceptor requestMetrics;
+    private final StringPools stringPools;
+
+    public MetricsController(UserServices userServices, MyFakeMessageBus messageBus,
+                             RequestMetricsInterceptor requestMetrics, StringPools stringPools)
+    {
+        this.userServices = userServices;
+        this.messageBus = messageBus;
+        this.requestMetrics = requestMetrics;
+        this.stringPools = stringPools;
+    }
+
+    /**
+     * A GET endpoint returning the metrics of the service :
+     * the latencies of each endpoint, the time waiting for and holding the locks of the users,
+     * the sizes of the repository and of the indexes, the state of the message bus and the hit rates of the string pools
+     * The latencies are in microseconds
+     * @return a OK REQUEST (200) with the metrics
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public ResponseEntity<?> metrics()
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("endpoints", requestMetrics.summarize());
+
+        Map<String, Object> locks = new LinkedHashMap<>();
+        locks.put("wait", userServices.getLockWaitTimes().summarize());
+        locks.put("hold", userServices.getLockHoldTimes().summarize());
+        metrics.put("locks", locks);
+
+        metrics.put("repositorySize", userServices.getUserRepository().size());
+        metrics.put("indexes", userServices.getIndexSizes());
+
+        Map<String, Object> bus = new LinkedHashMap<>();
+        bus.put("capacity", messageBus.getCapacity());
+        bus.put("depth", messageBus.getDepth());
+        bus.put("dropped", messageBus.getDroppedMessages());
+        bus.put("spilled", messageBus.getSpilledMessages());
+        metrics.put("bus", bus);
+
+        Map<String, Object> pools = new LinkedHashMap<>();
+        for (Map.Entry<Criteria, StringPool> pool : stringPools.getPools().entrySet())
+        {
+            Map<String, Object> poolMetrics = new LinkedHashMap<>();
+            poolMetrics.put("size", pool.getValue().getSize());
+            poolMetrics.put("hitRate", pool.getValue().getHitRate());
+            pools.put(pool.getKey().getCriteriaName(), poolMetrics);
+        }
+        metrics.put("stringPools", pools);
+
+        return ResponseEntity.status(HttpStatus.OK).body(metrics);
+    }
+}
@@ -1,18 +1,38 @@
 package com.example.controllers;
 
+import com.example.entities.BulkItemResult;
+import com.example.entities.BulkOperation;
 import com.example.entities.Criteria;
 import com.example.entities.User;
+import com.example.entities.UserPage;
+import com.example.exceptions.BadRequestException;
 import com.example.exceptions.ExceptionConverter;
 import com.example.services.UserServices;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A Rest Controller responsible for actions on user
@@ -24,8 +44,44 @@ public class UserController
     public static final Pattern VALID_EMAIL_ADDRESS_REGEX =
             Pattern.compile("^[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,6}$", Pattern.CASE_INSENSITIVE);
 
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int DEFAULT_AUTOCOMPLETE_SIZE = 10;
+    public static final int MAX_AUTOCOMPLETE_SIZE = 100;
+    public static final int DEFAULT_NICKNAME_DISTANCE = 2;
+    public static final int MAX_NICKNAME_DISTANCE = 3;
+    public static final int DEFAULT_FACET_SIZE = 10;
+    public static final int MAX_FACET_SIZE = 1000;
+
+    //
+    // The failures whose message does not depend on the request are thrown as shared instances,
+    // they have no stack trace to fill, see BusinessException
+    //
+    private static final BadRequestException EMPTY_PREFIX = new BadRequestException("The prefix must not be empty");
+    private static final BadRequestException EMPTY_NICKNAME = new BadRequestException("The nickname must not be empty");
+    private static final BadRequestException MISSING_FIRSTNAME = new BadRequestException("First name can not be validated");
+    private static final BadRequestException MISSING_LASTNAME = new BadRequestException("Last name can not be validated");
+    private static final BadRequestException MISSING_NICKNAME = new BadRequestException("Nick name can not be validated");
+    private static final BadRequestException MISSING_EMAIL = new BadRequestException("Email name can not be validated");
+    private static final BadRequestException MISSING_PASSWORD = new BadRequestException("Password name can not be validated");
+    private static final BadRequestException MISSING_COUNTRY = new BadRequestException("Country name can not be validated");
+    private static final BadRequestException MISSING_OPERATION = new BadRequestException("The operation is missing");
+
     Logger logger = LoggerFactory.getLogger(UserController.class);
 
+    //
+    // The users are written one by one, the writer must not flush after each of them
+    //
+    private final ObjectWriter userWriter = new ObjectMapper().writerFor(User.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    //
+    // The operations of a stream are read one by one, the users are built from their constructor
+    //
+    private final ObjectReader bulkReader = new ObjectMapper().findAndRegisterModules()
+            .readerFor(BulkOperation.class);
+
     private final UserServices userServices;
 
     public UserController(UserServices userServices)
@@ -82,20 +138,90 @@ public class UserController
     }
 
     /**
-     * A GET endpoint returning all users matching a given criteria
+     * A POST endpoint applying many creations, updates and deletions at once
+     * Each operation gives its action (create, update or delete) and the user, or only the email for a deletion
+     * @param operations the operations, applied in the order of the list
+     * @return a OK REQUEST (200) with the result of each operation, its status is the one
+     * the endpoint of the single operation would have returned
+     */
+    @RequestMapping(value = "/bulk", method= RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> bulk(@RequestBody List<BulkOperation> operations)
+    {
+        try
+        {
+            List<BulkItemResult> results = applyBulk(operations, 0);
+
+            logger.info("The bulk of " + results.size() + " operations has been applied");
+            return ResponseEntity.status(HttpStatus.OK).body(results);
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A POST endpoint applying a stream of operations, as newline delimited JSON, one operation per line
+     * The operations are applied while the stream is read, by chunks of {@link UserServices#BULK_CHUNK_SIZE}
+     * @param input the stream of operations
+     * @return a OK REQUEST (200) with the result of each operation
+     * In case of a line that cannot be read, a BAD REQUEST (400) telling how many operations
+     * have been applied before it
+     */
+    @RequestMapping(value = "/bulk", method= RequestMethod.POST, consumes = NDJSON_CONTENT_TYPE)
+    public ResponseEntity<?> bulkStream(InputStream input)
+    {
+        List<BulkItemResult> results = new ArrayList<>();
+        try (MappingIterator<BulkOperation> iterator = bulkReader.readValues(input))
+        {
+            List<BulkOperation> chunk = new ArrayList<>(UserServices.BULK_CHUNK_SIZE);
+            try
+            {
+                while (iterator.hasNextValue())
+                {
+                    chunk.add(iterator.nextValue());
+                    if (chunk.size() == UserServices.BULK_CHUNK_SIZE)
+                    {
+                        results.addAll(applyBulk(chunk, results.size()));
+                        chunk.clear();
+                    }
+                }
+            }
+            catch (JsonProcessingException exception)
+            {
+                throw new BadRequestException("The operation [" + (results.size() + chunk.size()) +
+                        "] cannot be read, the " + results.size() + " previous operations have been applied");
+            }
+            results.addAll(applyBulk(chunk, results.size()));
+
+            logger.info("The bulk of " + results.size() + " operations has been applied");
+            return ResponseEntity.status(HttpStatus.OK).body(results);
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning the users matching a given criteria, a page at a time
      * @param criteria
      * @param value
-     * @return a OK REQUEST (200) with a list of users matching the filter
+     * @param limit the maximum number of users of the page, {@link #DEFAULT_PAGE_SIZE} by default
+     * @param cursor the next cursor of the previous page
+     * @return a OK REQUEST (200) with a page of users matching the filter, and the cursor of the next page
      * In case of incomplete information, a BAD REQUEST (400) with
      * the missing information will be sent
      */
     @RequestMapping(value = "/getUsers", method= RequestMethod.GET)
-    public ResponseEntity<?> getUsers(@RequestParam("criteria")  String criteria, @RequestParam("value") String value)
+    public ResponseEntity<?> getUsers(@RequestParam("criteria")  String criteria, @RequestParam("value") String value,
+                                      @RequestParam(value = "limit", required = false) Integer limit,
+                                      @RequestParam(value = "cursor", required = false) String cursor)
     {
         try
         {
             validateCriteria(criteria, value);
-            List<User> users = userServices.getAllUsers(criteria, value);
+            UserPage users = userServices.getAllUsers(criteria, value, validatePageSize(limit), cursor);
 
             logger.info("The search has been successful");
             return ResponseEntity.status(HttpStatus.OK).body(users);
@@ -107,17 +233,178 @@ public class UserController
     }
 
     /**
-     * A GET endpoint returning all users
-     * @return a OK REQUEST (200) with a list of users matching the filter
+     * A GET endpoint returning the users matching several criteria, a page at a time
+     * e.g. q=country=france AND lastname=henry OR nickname=king henry, AND binding tighter than OR
+     * @param query the conditions the users must match
+     * @param limit the maximum number of users of the page, {@link #DEFAULT_PAGE_SIZE} by default
+     * @param cursor the next cursor of the previous page
+     * @return a OK REQUEST (200) with a page of users matching the query, and the cursor of the next page
+     * In case of an invalid query, a BAD REQUEST (400) with
+     * the reason will be sent
+     */
+    @RequestMapping(value = "/query", method= RequestMethod.GET)
+    public ResponseEntity<?> query(@RequestParam("q") String query,
+                                   @RequestParam(value = "limit", required = false) Integer limit,
+                                   @RequestParam(value = "cursor", required = false) String cursor)
+    {
+        try
+        {
+            UserPage users = userServices.queryUsers(query, validatePageSize(limit), cursor);
+
+            logger.info("The query has been successful");
+            return ResponseEntity.status(HttpStatus.OK).body(users);
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning the first users whose name starts with a prefix, for type-ahead
+     * @param prefix the beginning of the name
+     * @param field the name to search, nickname, firstname or lastname, or all of them if it is not given
+     * @param limit the maximum number of users
+     * @return a OK REQUEST (200) with the users, in the order of their matching name
+     * In case of incomplete information, a BAD REQUEST (400) with
+     * the missing information will be sent
+     */
+    @RequestMapping(value = "/autocomplete", method= RequestMethod.GET)
+    public ResponseEntity<?> autocomplete(@RequestParam("prefix") String prefix,
+                                          @RequestParam(value = "field", required = false) String field,
+                                          @RequestParam(value = "limit", required = false) Integer limit)
+    {
+        try
+        {
+            if (prefix.isEmpty())
+            {
+                throw EMPTY_PREFIX;
+            }
+            int size = limit == null ? DEFAULT_AUTOCOMPLETE_SIZE : limit;
+            if (size < 1 || size > MAX_AUTOCOMPLETE_SIZE)
+            {
+                throw new BadRequestException("The limit [" + limit + "] must be between 1 and "
+                        + MAX_AUTOCOMPLETE_SIZE);
+            }
+
+            return ResponseEntity.status(HttpStatus.OK).body(userServices.autocomplete(prefix, field, size));
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning the users whose nickname is close to the given one, for misspelled nicknames
+     * @param nickname the nickname to look for
+     * @param maxDistance the maximum number of characters inserted, deleted or substituted, 2 by default
+     * @param limit the maximum number of users
+     * @return a OK REQUEST (200) with the users and the distance of their nickname, the closest first
+     * In case of incomplete information, a BAD REQUEST (400) with
+     * the missing information will be sent
+     */
+    @RequestMapping(value = "/searchNickname", method= RequestMethod.GET)
+    public ResponseEntity<?> searchNickname(@RequestParam("nickname") String nickname,
+                                            @RequestParam(value = "maxDistance", required = false) Integer maxDistance,
+                                            @RequestParam(value = "limit", required = false) Integer limit)
+    {
+        try
+        {
+            if (nickname.isEmpty())
+            {
+                throw EMPTY_NICKNAME;
+            }
+            int distance = maxDistance == null ? DEFAULT_NICKNAME_DISTANCE : maxDistance;
+            if (distance < 0 || distance > MAX_NICKNAME_DISTANCE)
+            {
+                throw new BadRequestException("The maximum distance [" + maxDistance + "] must be between 0 and "
+                        + MAX_NICKNAME_DISTANCE);
+            }
+            int size = limit == null ? DEFAULT_AUTOCOMPLETE_SIZE : limit;
+            if (size < 1 || size > MAX_AUTOCOMPLETE_SIZE)
+            {
+                throw new BadRequestException("The limit [" + limit + "] must be between 1 and "
+                        + MAX_AUTOCOMPLETE_SIZE);
+            }
+
+            return ResponseEntity.status(HttpStatus.OK).body(userServices.searchNickname(nickname, distance, size));
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning the number of users matching a given criteria, or of all users
+     * The users are counted by the index, none of them is read
+     * @param criteria
+     * @param value
+     * @return a OK REQUEST (200) with the number of users
+     * In case of incomplete information, a BAD REQUEST (400) with
+     * the missing information will be sent
+     */
+    @RequestMapping(value = "/count", method= RequestMethod.GET)
+    public ResponseEntity<?> count(@RequestParam(value = "criteria", required = false) String criteria,
+                                   @RequestParam(value = "value", required = false) String value)
+    {
+        try
+        {
+            if (criteria != null)
+            {
+                validateCriteria(criteria, value);
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(userServices.countUsers(criteria, value));
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning the values of a criteria held by the most users, e.g. the users per country
+     * @param criteria
+     * @param top the maximum number of values
+     * @return a OK REQUEST (200) with the values and their number of users, the most frequent first
+     * In case of incomplete information, a BAD REQUEST (400) with
+     * the missing information will be sent
+     */
+    @RequestMapping(value = "/facets", method= RequestMethod.GET)
+    public ResponseEntity<?> facets(@RequestParam("criteria") String criteria,
+                                    @RequestParam(value = "top", required = false) Integer top)
+    {
+        try
+        {
+            int size = top == null ? DEFAULT_FACET_SIZE : top;
+            if (size < 1 || size > MAX_FACET_SIZE)
+            {
+                throw new BadRequestException("The top [" + top + "] must be between 1 and " + MAX_FACET_SIZE);
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(userServices.facet(criteria, size));
+        }
+        catch (Exception exception)
+        {
+            return ExceptionConverter.convertException(exception);
+        }
+    }
+
+    /**
+     * A GET endpoint returning all users, a page at a time, see {@link #exportUsers(boolean)} to read them all at once
+     * @param limit the maximum number of users of the page, {@link #DEFAULT_PAGE_SIZE} by default
+     * @param cursor the next cursor of the previous page
+     * @return a OK REQUEST (200) with a page of users, and the cursor of the next page
      * In case of incomplete information, a BAD REQUEST (400) with
      * the missing information will be sent
      */
     @RequestMapping(value = "/getAll", method= RequestMethod.GET)
-    public ResponseEntity<?> getAll()
+    public ResponseEntity<?> getAll(@RequestParam(value = "limit", required = false) Integer limit,
+                                    @RequestParam(value = "cursor", required = false) String cursor)
     {
         try
         {
-            List<User> users = userServices.getAllUsers(null, null);
+            UserPage users = userServices.getAllUsers(null, null, validatePageSize(limit), cursor);
 
             logger.info("The search has been successful");
             return ResponseEntity.status(HttpStatus.OK).body(users);
@@ -128,6 +415,43 @@ public class UserController
         }
     }
 
+    /**
+     * A GET endpoint streaming all users as newline delimited JSON, one user per line
+     * The users are written while they are read, so the memory used does not depend on their number
+     * @param gzip whether the response must be compressed
+     * @return a OK REQUEST (200) with the users, in the order they have been created
+     */
+    @RequestMapping(value = "/export", method= RequestMethod.GET, produces = NDJSON_CONTENT_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip)
+    {
+        Iterable<User> users = userServices.exportUsers();
+        StreamingResponseBody body = output ->
+        {
+            long count = 0;
+            try (OutputStream stream = gzip ? gzip(output) : output;
+                 JsonGenerator generator = userWriter.getFactory().createGenerator(stream))
+            {
+                generator.setRootValueSeparator(null);
+                for (User user : users)
+                {
+                    userWriter.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                    count++;
+                }
+            }
+
+            logger.info("The export of " + count + " users has been successful");
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (gzip)
+        {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     /**
      * A GET endpoint returning a single user with the given email
      * @param email
@@ -174,6 +498,29 @@ public class UserController
         }
     }
 
+    /**
+     * @return a stream compressing to the given one, whose deflater is released even if the last write fails,
+     * e.g. when the client has gone, which the close of a {@link GZIPOutputStream} skips
+     */
+    private static OutputStream gzip(OutputStream output) throws IOException
+    {
+        return new GZIPOutputStream(output, 64 * 1024)
+        {
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    def.end();
+                }
+            }
+        };
+    }
+
     /**
      * Check if all required information is given
      * This is only a input validation, not a business one
@@ -195,36 +542,122 @@ public class UserController
 
         if (firstname == null || firstname.isEmpty())
         {
-            throw new IllegalArgumentException("First name can not be validated");
+            throw MISSING_FIRSTNAME;
         }
 
         if (lastname == null || lastname.isEmpty())
         {
-            throw new IllegalArgumentException("Last name can not be validated");
+            throw MISSING_LASTNAME;
         }
 
         if (nickname == null || nickname.isEmpty())
         {
-            throw new IllegalArgumentException("Nick name can not be validated");
+            throw MISSING_NICKNAME;
         }
 
         if (email == null || email.isEmpty())
         {
-            throw new IllegalArgumentException("Email name can not be validated");
+            throw MISSING_EMAIL;
         }
         validateEmail(email);
 
         if (password == null || password.isEmpty())
         {
-            throw new IllegalArgumentException("Password name can not be validated");
+            throw MISSING_PASSWORD;
         }
 
         if (country == null || country.isEmpty())
         {
-            throw new IllegalArgumentException("Country name can not be validated");
+            throw MISSING_COUNTRY;
+        }
+    }
+
+
+    /**
+     * Validate the operations, then apply the valid ones
+     * @param operations the operations to apply
+     * @param firstIndex the index of the first operation in the request
+     * @return the result of each operation
+     */
+    private List<BulkItemResult> applyBulk(List<BulkOperation> operations, int firstIndex)
+    {
+        BulkItemResult[] results = new BulkItemResult[operations.size()];
+        List<BulkOperation> validOperations = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++)
+        {
+            BulkOperation operation = operations.get(i);
+            try
+            {
+                validateOperation(operation);
+                validOperations.add(operation);
+            }
+            catch (BadRequestException exception)
+            {
+                results[i] = new BulkItemResult(firstIndex + i, operation == null ? null : operation.getEmail(),
+                        HttpStatus.BAD_REQUEST.value(), exception.getMessage());
+            }
+        }
+
+        //
+        // The failures are given in the order of the valid operations
+        //
+        List<RuntimeException> failures = userServices.applyBulk(validOperations);
+        int next = 0;
+        for (int i = 0; i < results.length; i++)
+        {
+            if (results[i] == null)
+            {
+                RuntimeException failure = failures.get(next++);
+                String email = operations.get(i).getEmail();
+                results[i] = failure == null ? new BulkItemResult(firstIndex + i, email, HttpStatus.OK.value(), null)
+                        : new BulkItemResult(firstIndex + i, email,
+                                ExceptionConverter.convertStatus(failure).value(), failure.getMessage());
+            }
         }
+        return Arrays.asList(results);
     }
 
+    /**
+     * Check if an operation of a bulk gives all the information its action requires
+     * @param operation
+     * Throw an exception if any required information is missing
+     */
+    private void validateOperation(BulkOperation operation)
+    {
+        if (operation == null)
+        {
+            throw MISSING_OPERATION;
+        }
+
+        String action = String.valueOf(operation.getAction());
+        switch (action)
+        {
+            case BulkOperation.CREATE:
+            case BulkOperation.UPDATE:
+                if (operation.getUser() == null)
+                {
+                    throw new BadRequestException("The user of the " + action + " is missing");
+                }
+                validateUser(operation.getUser());
+                if (!operation.getUser().getEmail().equals(operation.getEmail()))
+                {
+                    throw new BadRequestException("The email [" + operation.getEmail() + "] of the " + action +
+                            " differs from the email of its user [" + operation.getUser().getEmail() + "]");
+                }
+                break;
+            case BulkOperation.DELETE:
+                String email = operation.getEmail();
+                if (email == null || email.isEmpty())
+                {
+                    throw MISSING_EMAIL;
+                }
+                validateEmail(email);
+                break;
+            default:
+                throw new BadRequestException("The action [" + action + "] does not exist," +
+                        " it must be one of create, update or delete");
+        }
+    }
 
     /**
      * Check if all required information is given
@@ -239,22 +672,39 @@ public class UserController
         Criteria enumCriteria = Criteria.fromString(criteria);
         if(enumCriteria.equals(Criteria.UNDEFINED) && criteria != null)
         {
-            throw new IllegalArgumentException("The given criteria ["+criteria+"] does not correspond " +
+            throw new BadRequestException("The given criteria ["+criteria+"] does not correspond " +
                     "to any possible filter");
         }
         else if(!enumCriteria.equals(Criteria.UNDEFINED) && ( (value == null) || value.isEmpty() ))
         {
-            throw new IllegalArgumentException("The given criteria ["+criteria+"] must be given with a correct " +
+            throw new BadRequestException("The given criteria ["+criteria+"] must be given with a correct " +
                     "value ["+value+"]");
         }
     }
 
+    /**
+     * @param limit the page size asked, or null for the default one
+     * @return the page size
+     */
+    private int validatePageSize(Integer limit)
+    {
+        if (limit == null)
+        {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+        {
+            throw new BadRequestException("The limit [" + limit + "] must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
     private void validateEmail(String email)
     {
         Matcher matcher = VALID_EMAIL_ADDRESS_REGEX .matcher(email);
         if(! matcher.find())
         {
-            throw new IllegalArgumentException("The email address ["+email+"] is not correct");
+            throw new BadRequestException("The email address ["+email+"] is not correct");
         }
     }
 }
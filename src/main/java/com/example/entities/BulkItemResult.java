@@ -0,0 +1,46 @@
+package com.example.entities;
+
+/**
+ * The outcome of a single mutation of a bulk request
+ */
+public class BulkItemResult
+{
+    private final int index;
+    private final String email;
+    private final int status;
+    private final String error;
+
+    /**
+     * @param index the position of the mutation in the request
+     * @param email the email of the user the mutation applies to
+     * @param status the HTTP status the single mutation endpoint would have returned
+     * @param error the reason of the failure, or null if the mutation succeeded
+     */
+    public BulkItemResult(int index, String email, int status, String error)
+    {
+        this.index = index;
+        this.email = email;
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public String getEmail()
+    {
+        return email;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    public String getError()
+    {
+        return error;
+    }
+}
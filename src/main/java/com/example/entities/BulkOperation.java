@@ -0,0 +1,41 @@
+package com.example.entities;
+
+/**
+ * A single mutation of a bulk request
+ * A creation or an update gives the whole user, a deletion only gives the email
+ */
+public class BulkOperation
+{
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+
+    private final String action;
+    private final User user;
+    private final String email;
+
+    public BulkOperation(String action, User user, String email)
+    {
+        this.action = action;
+        this.user = user;
+        this.email = email;
+    }
+
+    public String getAction()
+    {
+        return action;
+    }
+
+    public User getUser()
+    {
+        return user;
+    }
+
+    /**
+     * @return the email of the user the operation applies to
+     */
+    public String getEmail()
+    {
+        return email != null || user == null ? email : user.getEmail();
+    }
+}
@@ -40,5 +40,31 @@ public enum Criteria
         return type;
     }
 
+    public String getCriteriaName()
+    {
+        return criteriaName;
+    }
+
+    /**
+     * Extract the value of this criteria from a user
+     * @param user the user to read
+     * @return the (lowercased) value of the field, or null for {@link #UNDEFINED}
+     */
+    public String extractValue(User user)
+    {
+        switch (this)
+        {
+            case FIRSTNAME:
+                return user.getFirstname();
+            case LASTNAME:
+                return user.getLastname();
+            case NICKNAME:
+                return user.getNickname();
+            case COUNTRY:
+                return user.getCountry();
+            default:
+                return null;
+        }
+    }
 
 }
@@ -0,0 +1,26 @@
+package com.example.entities;
+
+/**
+ * The number of users holding a value of a criteria
+ */
+public class FacetCount
+{
+    private final String value;
+    private final int count;
+
+    public FacetCount(String value, int count)
+    {
+        this.value = value;
+        this.count = count;
+    }
+
+    public String getValue()
+    {
+        return value;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+}
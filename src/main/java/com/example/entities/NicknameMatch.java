@@ -0,0 +1,30 @@
+package com.example.entities;
+
+/**
+ * A user whose nickname is close to the one searched
+ */
+public class NicknameMatch
+{
+    private final User user;
+    private final int distance;
+
+    /**
+     * @param user the user found
+     * @param distance the number of edits between its nickname and the one searched
+     */
+    public NicknameMatch(User user, int distance)
+    {
+        this.user = user;
+        this.distance = distance;
+    }
+
+    public User getUser()
+    {
+        return user;
+    }
+
+    public int getDistance()
+    {
+        return distance;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.entities;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of strings, so that the users holding the same value share a single instance of it
+ * e.g. a million French users hold a single "france", and comparing two pooled values is a reference check
+ *
+ * There is one pool per field of the {@link User}, see {@link StringPools}, only the values of the fields
+ * of low cardinality are worth pooling. Once a pool is full, the new values are not pooled anymore,
+ * the values already pooled stay, so a pool never costs more than its maximum size.
+ */
+public final class StringPool
+{
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    StringPool(int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param value the value
+     * @return the pooled instance equal to the value, or the value itself if the pool is full
+     */
+    public String intern(String value)
+    {
+        String pooled = values.get(value);
+        if (pooled != null)
+        {
+            hits.increment();
+            return pooled;
+        }
+
+        misses.increment();
+        if (size.get() >= maxSize)
+        {
+            return value;
+        }
+        pooled = values.putIfAbsent(value, value);
+        if (pooled != null)
+        {
+            return pooled;
+        }
+        size.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * @return the number of values found in the pool
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of values not found in the pool, whether they were added to it or not
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the share of the values found in the pool, between 0 and 1
+     */
+    public double getHitRate()
+    {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return the number of values pooled
+     */
+    public int getSize()
+    {
+        return size.get();
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+}
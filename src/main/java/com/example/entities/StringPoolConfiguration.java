@@ -0,0 +1,37 @@
+package com.example.entities;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Choose the string pools of the users from the application properties
+ *
+ * user.intern.fields = the fields whose values are pooled, firstname, lastname and country by default, see {@link StringPools}
+ * user.intern.max-size = the maximum number of values of each field
+ */
+@Configuration
+public class StringPoolConfiguration
+{
+    @Bean
+    public StringPools stringPools(
+            @Value("${user.intern.fields:firstname,lastname,country}") String[] fields,
+            @Value("${user.intern.max-size:" + StringPools.DEFAULT_MAX_SIZE + "}") int maxSize)
+    {
+        List<Criteria> criteria = new ArrayList<>();
+        for (String field : fields)
+        {
+            Criteria enumCriteria = Criteria.fromString(field.trim().toLowerCase());
+            if (enumCriteria.equals(Criteria.UNDEFINED) && !field.trim().isEmpty())
+            {
+                throw new IllegalArgumentException("The field [" + field + "] cannot be pooled, it must be one of" +
+                        " firstname, lastname, nickname or country");
+            }
+            criteria.add(enumCriteria);
+        }
+        return new StringPools(criteria, maxSize);
+    }
+}
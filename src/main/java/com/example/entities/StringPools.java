@@ -0,0 +1,82 @@
+package com.example.entities;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The string pools of the fields of the users, see {@link StringPool}
+ *
+ * The users are built with the values they are given, the service interns them before it stores them,
+ * so only the users it holds share their values. The pools of a service are chosen when it is created.
+ */
+public class StringPools
+{
+    public static final int DEFAULT_MAX_SIZE = 65536;
+    public static final Collection<Criteria> DEFAULT_FIELDS =
+            Collections.unmodifiableList(Arrays.asList(Criteria.FIRSTNAME, Criteria.LASTNAME, Criteria.COUNTRY));
+
+    private final Map<Criteria, StringPool> pools;
+
+    /**
+     * Pool the values of the default fields
+     */
+    public StringPools()
+    {
+        this(DEFAULT_FIELDS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param fields the pooled fields
+     * @param maxSize the maximum number of values of each pool
+     */
+    public StringPools(Collection<Criteria> fields, int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("The size of a string pool [" + maxSize + "] must be positive");
+        }
+        Map<Criteria, StringPool> created = new EnumMap<>(Criteria.class);
+        for (Criteria field : fields)
+        {
+            if (!field.equals(Criteria.UNDEFINED))
+            {
+                created.put(field, new StringPool(maxSize));
+            }
+        }
+        this.pools = Collections.unmodifiableMap(created);
+    }
+
+    /**
+     * Get the pooled instance of the value of a field
+     * @param field the field of the user holding the value
+     * @param value the value
+     * @return the pooled instance equal to the value, or the value itself if the field is not pooled or its pool is full
+     */
+    public String intern(Criteria field, String value)
+    {
+        StringPool pool = pools.get(field);
+        return pool == null ? value : pool.intern(value);
+    }
+
+    /**
+     * @param user the user
+     * @return a user equal to the given one, holding the pooled instances of its values
+     */
+    public User intern(User user)
+    {
+        return new User(intern(Criteria.FIRSTNAME, user.getFirstname()), intern(Criteria.LASTNAME, user.getLastname()),
+                intern(Criteria.NICKNAME, user.getNickname()), user.getEmail(), user.getPassword(),
+                intern(Criteria.COUNTRY, user.getCountry()));
+    }
+
+    /**
+     * @return the pool of each pooled field
+     */
+    public Map<Criteria, StringPool> getPools()
+    {
+        return pools;
+    }
+}
@@ -8,12 +8,12 @@ import java.util.Map;
  */
 public class User
 {
-    private final String FIRSTNAME = "firstname";
-    private final String LASTNAME  = "lastname";
-    private final String NICKNAME  = "nickname";
-    private final String EMAIL     = "email";
-    private final String PASSWORD  = "password";
-    private final String COUNTRY   = "country";
+    private static final String FIRSTNAME = "firstname";
+    private static final String LASTNAME  = "lastname";
+    private static final String NICKNAME  = "nickname";
+    private static final String EMAIL     = "email";
+    private static final String PASSWORD  = "password";
+    private static final String COUNTRY   = "country";
 
 
     private final String firstname;
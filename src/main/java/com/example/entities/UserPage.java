@@ -0,0 +1,31 @@
+package com.example.entities;
+
+import java.util.List;
+
+/**
+ * A page of users, with the cursor to give to get the next page
+ */
+public class UserPage
+{
+    private final List<User> users;
+    private final String nextCursor;
+
+    public UserPage(List<User> users, String nextCursor)
+    {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers()
+    {
+        return users;
+    }
+
+    /**
+     * @return the cursor of the next page, or null if this page is the last one
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class BadRequestException extends BusinessException
+{
+    public BadRequestException(String message)
+    {
+        super(message, HttpStatus.BAD_REQUEST);
+    }
+}
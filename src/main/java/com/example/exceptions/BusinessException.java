@@ -0,0 +1,30 @@
+package com.example.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * A request the service refuses, answered with the given HTTP status
+ *
+ * These exceptions are expected, e.g. every GET of an unknown email throws one, so they are built
+ * without a stack trace : filling it walks the whole stack of the request, which costs more than
+ * the lookup that failed. Nor do they record suppressed exceptions.
+ * So an exception whose message does not depend on the request can be built once and thrown by every request.
+ */
+public abstract class BusinessException extends RuntimeException
+{
+    private final HttpStatus status;
+
+    protected BusinessException(String message, HttpStatus status)
+    {
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    /**
+     * @return the status of the response to the request
+     */
+    public HttpStatus getStatus()
+    {
+        return status;
+    }
+}
@@ -4,12 +4,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(value = HttpStatus.CONFLICT)
-public class ConflictException extends RuntimeException
+public class ConflictException extends BusinessException
 {
-    String message;
-
     public ConflictException(String message)
     {
-        this.message= message;
+        super(message, HttpStatus.CONFLICT);
     }
 }
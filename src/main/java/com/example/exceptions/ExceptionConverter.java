@@ -7,38 +7,31 @@ public class ExceptionConverter
 {
     /**
      * Converts an exception into a HTTP Response
-     * @param exception
-     * @return
+     * @param exception the failure of the request
+     * @return the response with the status of the failure and its message as body
      */
     public static ResponseEntity<?> convertException(Exception exception)
     {
-        ResponseEntity output = null;
-        if(exception instanceof IllegalArgumentException)
-        {
-            output = ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(exception.getMessage());
-        }
-        else if(exception instanceof NotFoundException)
-        {
-            output = ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(exception.getMessage());
-        }
-        else if(exception instanceof ConflictException)
-        {
-            output = ResponseEntity.status(HttpStatus.CONFLICT)
-                    .body(exception.getMessage());
-        }
-        else if(exception instanceof UnauthorizedException)
+        return ResponseEntity.status(convertStatus(exception))
+                .body(exception.getMessage());
+    }
+
+    /**
+     * Converts an exception into the HTTP status of the response
+     * @param exception the failure of the request
+     * @return the status carried by a {@link BusinessException}, BAD REQUEST (400) for an illegal argument,
+     * INTERNAL SERVER ERROR (500) otherwise
+     */
+    public static HttpStatus convertStatus(Exception exception)
+    {
+        if(exception instanceof BusinessException)
         {
-            output = ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-                    .body(exception.getMessage());
+            return ((BusinessException) exception).getStatus();
         }
-        else
+        else if(exception instanceof IllegalArgumentException)
         {
-            output = ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(exception.getMessage());
+            return HttpStatus.BAD_REQUEST;
         }
-
-        return output;
+        return HttpStatus.INTERNAL_SERVER_ERROR;
     }
 }
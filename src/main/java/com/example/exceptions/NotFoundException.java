@@ -4,12 +4,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
 @ResponseStatus(value = HttpStatus.NOT_FOUND)
-public class NotFoundException extends RuntimeException
+public class NotFoundException extends BusinessException
 {
-    String message;
-
     public NotFoundException(String message)
     {
-        this.message= message;
+        super(message, HttpStatus.NOT_FOUND);
     }
 }
@@ -0,0 +1,13 @@
+package com.example.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends BusinessException
+{
+    public ServiceUnavailableException(String message)
+    {
+        super(message, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
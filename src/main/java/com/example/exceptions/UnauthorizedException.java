@@ -1,11 +1,11 @@
 package com.example.exceptions;
 
-public class UnauthorizedException extends RuntimeException
-{
-    String message;
+import org.springframework.http.HttpStatus;
 
+public class UnauthorizedException extends BusinessException
+{
     public UnauthorizedException(String message)
     {
-        this.message= message;
+        super(message, HttpStatus.UNAUTHORIZED);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package com.example.execution;
+
+import com.example.controllers.UserController;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcRegistrations;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Choose the threads running the handlers of the users from the application properties
+ *
+ * user.execution.mode = servlet (default), async or virtual, see {@link ExecutionMode}
+ * user.execution.threads = the number of threads of the async mode
+ * user.execution.queue-size = the number of requests of the async mode waiting for a thread,
+ * beyond which the requests are answered with a SERVICE UNAVAILABLE (503)
+ */
+@Configuration
+public class ExecutionConfiguration implements WebMvcRegistrations, DisposableBean
+{
+    private final ExecutionMode mode;
+    private final int threads;
+    private final int queueSize;
+    private ExecutorService executor;
+
+    public ExecutionConfiguration(@Value("${user.execution.mode:servlet}") String mode,
+                                  @Value("${user.execution.threads:64}") int threads,
+                                  @Value("${user.execution.queue-size:1024}") int queueSize)
+    {
+        this.mode = ExecutionMode.fromName(mode.trim());
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public RequestMappingHandlerAdapter getRequestMappingHandlerAdapter()
+    {
+        if (mode == ExecutionMode.SERVLET)
+        {
+            return null;
+        }
+        executor = mode.createExecutor(threads, queueSize);
+        return new OffloadingHandlerAdapter(executor, Collections.singleton(UserController.class));
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (executor != null)
+        {
+            executor.shutdown();
+        }
+    }
+}
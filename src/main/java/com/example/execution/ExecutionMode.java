@@ -0,0 +1,83 @@
+package com.example.execution;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This enumeration lists the threads running the handlers of the user requests
+ */
+public enum ExecutionMode
+{
+    /**
+     * The handlers run on the thread of the servlet container which received the request
+     */
+    SERVLET,
+
+    /**
+     * The handlers run on a fixed pool of threads, the thread of the container is given back as soon as
+     * the arguments are read, so the requests waiting for a lock of the users only hold a thread of the pool.
+     * The requests waiting for a thread of the pool are queued up to a bound, then refused.
+     */
+    ASYNC,
+
+    /**
+     * The handlers run on a new virtual thread each, which only holds a carrier thread while it runs,
+     * not while it waits for a lock. It requires Java 21.
+     */
+    VIRTUAL;
+
+    /**
+     * @param name servlet, async or virtual
+     */
+    public static ExecutionMode fromName(String name)
+    {
+        return valueOf(name.toUpperCase());
+    }
+
+    /**
+     * @param threads the number of threads of the pool of the async mode
+     * @param queueSize the number of handlers of the async mode waiting for a thread of the pool,
+     * beyond which the executor throws a {@link RejectedExecutionException}
+     * @return the executor of the handlers, or null for the servlet mode
+     * or throw a {@link IllegalStateException} if the virtual threads are not available
+     */
+    ExecutorService createExecutor(int threads, int queueSize)
+    {
+        switch (this)
+        {
+            case ASYNC:
+                AtomicInteger count = new AtomicInteger();
+                ThreadFactory threadFactory = runnable ->
+                {
+                    Thread thread = new Thread(runnable, "user-request-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+                return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            case VIRTUAL:
+                //
+                // Looked up at runtime, the service is still built for Java 8
+                //
+                try
+                {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                }
+                catch (NoSuchMethodException | IllegalAccessException
+                        | InvocationTargetException exception)
+                {
+                    throw new IllegalStateException("The virtual threads require Java 21, this is Java "
+                            + System.getProperty("java.version"), exception);
+                }
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.execution;
+
+import com.example.exceptions.ExceptionConverter;
+import com.example.exceptions.ServiceUnavailableException;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Run the handlers of some controllers on an executor, rather than on the thread of the servlet container
+ *
+ * The arguments of a handler are still resolved by the thread of the container, then the handler is called
+ * on the executor and its result is returned as a {@link CompletableFuture}. Spring MVC starts the async
+ * processing of the request, which gives the thread of the container back, and writes the response once
+ * the handler completes, like for a handler returning a {@link CompletableFuture} itself.
+ * So the controllers keep returning their results directly, whatever the execution mode.
+ *
+ * Resolving the arguments reads the body of the request, a single user at most, on the thread of the container.
+ * The async processing only starts once the handler returned, so the request can't be read after the offload,
+ * and a client slow to send its body still holds a thread of the container : only the wait for the locks,
+ * and the work, of the handler move to the executor.
+ *
+ * When the executor refuses the handler, its queue being full, the request is answered right away
+ * with a SERVICE UNAVAILABLE (503), on the thread of the container.
+ */
+class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter
+{
+    private static final List<Class<?>> ASYNC_TYPES = Arrays.asList(CompletionStage.class, Callable.class,
+            DeferredResult.class, ResponseBodyEmitter.class, StreamingResponseBody.class);
+
+    private static final ServiceUnavailableException BUSY =
+            new ServiceUnavailableException("Too many requests are waiting, try again later");
+
+    private final Executor executor;
+    private final Set<Class<?>> controllers;
+
+    /**
+     * @param executor the executor of the handlers
+     * @param controllers the controllers whose handlers are run on the executor
+     */
+    OffloadingHandlerAdapter(Executor executor, Collection<Class<?>> controllers)
+    {
+        this.executor = executor;
+        this.controllers = new HashSet<>(controllers);
+    }
+
+    @Override
+    protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod)
+    {
+        if (!controllers.contains(handlerMethod.getBeanType()) || isAsync(handlerMethod))
+        {
+            return super.createInvocableHandlerMethod(handlerMethod);
+        }
+        return new OffloadedHandlerMethod(handlerMethod);
+    }
+
+    /**
+     * @return whether the handler already gives its thread back, e.g. a streamed response written by another thread
+     */
+    private static boolean isAsync(HandlerMethod handlerMethod)
+    {
+        ResolvableType returnType = ResolvableType.forMethodParameter(handlerMethod.getReturnType());
+        if (ResponseEntity.class.isAssignableFrom(returnType.resolve(Object.class)))
+        {
+            returnType = returnType.getGeneric(0);
+        }
+        Class<?> resolvedType = returnType.resolve(Object.class);
+        return ASYNC_TYPES.stream().anyMatch(type -> type.isAssignableFrom(resolvedType));
+    }
+
+    private final class OffloadedHandlerMethod extends ServletInvocableHandlerMethod
+    {
+        private OffloadedHandlerMethod(HandlerMethod handlerMethod)
+        {
+            super(handlerMethod);
+        }
+
+        @Override
+        public Object invokeForRequest(NativeWebRequest request, ModelAndViewContainer mavContainer,
+                                       Object... providedArgs) throws Exception
+        {
+            Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+            try
+            {
+                return CompletableFuture.supplyAsync(() ->
+                {
+                    try
+                    {
+                        return doInvoke(args);
+                    }
+                    catch (Exception exception)
+                    {
+                        throw new CompletionException(exception);
+                    }
+                }, executor);
+            }
+            catch (RejectedExecutionException exception)
+            {
+                return ExceptionConverter.convertException(BUSY);
+            }
+        }
+    }
+}
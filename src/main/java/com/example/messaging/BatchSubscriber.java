@@ -0,0 +1,12 @@
+package com.example.messaging;
+
+import java.util.List;
+
+/**
+ * Receive the messages published on the {@link MyFakeMessageBus} in coalesced batches
+ * See {@link CoalescingSubscriber}
+ */
+public interface BatchSubscriber
+{
+    void onBatch(List<BusMessage> batch);
+}
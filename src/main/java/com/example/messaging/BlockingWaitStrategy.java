@@ -0,0 +1,61 @@
+package com.example.messaging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Block the subscribers on a condition until a message is published
+ * No CPU is used while the bus is idle, but waking up a subscriber costs a lock on the sender side
+ */
+public class BlockingWaitStrategy implements WaitStrategy
+{
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    @Override
+    public void waitFor(long sequence, RingBuffer ringBuffer) throws InterruptedException
+    {
+        if (ringBuffer.isPublished(sequence))
+        {
+            return;
+        }
+
+        waiters.incrementAndGet();
+        lock.lock();
+        try
+        {
+            while (!ringBuffer.isPublished(sequence))
+            {
+                published.await(1, TimeUnit.MILLISECONDS);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+            waiters.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking()
+    {
+        //
+        // The lock is only taken when a subscriber is actually waiting
+        //
+        if (waiters.get() > 0)
+        {
+            lock.lock();
+            try
+            {
+                published.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,11 +1,9 @@
 package com.example.messaging;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * This class represents an event used on a message bus
  * Used when an action occurred and we need to notify other services
+ * See {@link BusMessageCodec} for its wire format
  */
 public class BusMessage
 {
@@ -14,12 +12,22 @@ public class BusMessage
     public static final String USER_DELETE = "user_delete";
 
 
-    private final Map<String, Object> message;
+    private final String topic;
+    private final Object payload;
 
     public BusMessage(String topic, Object messagePayload)
     {
-        message = new HashMap<>();
-        message.put(topic, messagePayload);
+        this.topic = topic;
+        this.payload = messagePayload;
+    }
+
+    public String getTopic()
+    {
+        return topic;
     }
 
+    public Object getPayload()
+    {
+        return payload;
+    }
 }
@@ -0,0 +1,198 @@
+package com.example.messaging;
+
+import com.example.entities.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of the user events, as sent to the other services
+ *
+ * A message is the version of the format (byte), the topic (byte) and the fields
+ * of the user : email, firstname, lastname, nickname and country, each one written
+ * as its length (unsigned short) followed by its UTF-8 bytes.
+ * The password never leaves the service.
+ *
+ * The encoder writes the UTF-8 bytes straight into the given buffer, so encoding
+ * into a reused buffer allocates nothing.
+ */
+public final class BusMessageCodec
+{
+    public static final byte VERSION = 1;
+
+    private static final byte USER_ADD = 1;
+    private static final byte USER_UPDATE = 2;
+    private static final byte USER_DELETE = 3;
+
+    private static final int FIELD_COUNT = 5;
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+
+    private BusMessageCodec()
+    {
+    }
+
+    /**
+     * @return a size the encoded message never exceeds, to allocate the buffers
+     */
+    public static int maxEncodedSize(BusMessage message)
+    {
+        User user = user(message);
+        int chars = user.getEmail().length() + user.getFirstname().length() + user.getLastname().length() +
+                user.getNickname().length() + user.getCountry().length();
+        return 2 + FIELD_COUNT * Short.BYTES + 3 * chars;
+    }
+
+    /**
+     * Encode a message at the position of the buffer
+     * @param message the message to encode, its payload must be a user
+     * @param buffer the buffer receiving the message
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if the message does not fit in the buffer
+     */
+    public static int encode(BusMessage message, ByteBuffer buffer)
+    {
+        User user = user(message);
+        int start = buffer.position();
+        buffer.put(VERSION);
+        buffer.put(topicCode(message.getTopic()));
+        putString(buffer, user.getEmail());
+        putString(buffer, user.getFirstname());
+        putString(buffer, user.getLastname());
+        putString(buffer, user.getNickname());
+        putString(buffer, user.getCountry());
+        return buffer.position() - start;
+    }
+
+    /**
+     * Decode the message at the position of the buffer
+     * @param buffer the buffer holding the message, its position is moved after the message
+     * @return the message, its user has no password
+     */
+    public static BusMessage decode(ByteBuffer buffer)
+    {
+        byte version = buffer.get();
+        if (version != VERSION)
+        {
+            throw new IllegalArgumentException("The message version " + version + " is not supported");
+        }
+
+        String topic = topic(buffer.get());
+        String email = getString(buffer);
+        String firstname = getString(buffer);
+        String lastname = getString(buffer);
+        String nickname = getString(buffer);
+        String country = getString(buffer);
+        return new BusMessage(topic, new User(firstname, lastname, nickname, email, null, country));
+    }
+
+    private static User user(BusMessage message)
+    {
+        if (!(message.getPayload() instanceof User))
+        {
+            throw new IllegalArgumentException("Only the messages about a user can be encoded");
+        }
+        return (User) message.getPayload();
+    }
+
+    private static byte topicCode(String topic)
+    {
+        switch (topic)
+        {
+            case BusMessage.USER_ADD:
+                return USER_ADD;
+            case BusMessage.USER_UPDATE:
+                return USER_UPDATE;
+            case BusMessage.USER_DELETE:
+                return USER_DELETE;
+            default:
+                throw new IllegalArgumentException("The topic [" + topic + "] cannot be encoded");
+        }
+    }
+
+    private static String topic(byte topicCode)
+    {
+        switch (topicCode)
+        {
+            case USER_ADD:
+                return BusMessage.USER_ADD;
+            case USER_UPDATE:
+                return BusMessage.USER_UPDATE;
+            case USER_DELETE:
+                return BusMessage.USER_DELETE;
+            default:
+                throw new IllegalArgumentException("The topic " + topicCode + " does not exist");
+        }
+    }
+
+    /**
+     * Write the UTF-8 bytes of a string, the length is written once they are known
+     * Unpaired surrogates are written as '?', like {@link String#getBytes}
+     */
+    private static void putString(ByteBuffer buffer, String value)
+    {
+        int lengthPosition = buffer.position();
+        buffer.putShort((short) 0);
+        int start = buffer.position();
+
+        int length = value.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+                {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                }
+                else
+                {
+                    buffer.put((byte) '?');
+                }
+            }
+            else
+            {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+
+        int bytes = buffer.position() - start;
+        if (bytes > MAX_FIELD_LENGTH)
+        {
+            throw new IllegalArgumentException("A field of " + bytes + " bytes is too long to be encoded");
+        }
+        buffer.putShort(lengthPosition, (short) bytes);
+    }
+
+    private static String getString(ByteBuffer buffer)
+    {
+        int length = buffer.getShort() & 0xFFFF;
+        String value;
+        if (buffer.hasArray())
+        {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        }
+        else
+        {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.messaging;
+
+/**
+ * Spin on the ring buffer : the lowest latency, but each subscriber burns a core
+ */
+public class BusySpinWaitStrategy implements WaitStrategy
+{
+    @Override
+    public void waitFor(long sequence, RingBuffer ringBuffer) throws InterruptedException
+    {
+        while (!ringBuffer.isPublished(sequence))
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking()
+    {
+    }
+}
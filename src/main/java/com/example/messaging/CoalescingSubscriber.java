@@ -0,0 +1,165 @@
+package com.example.messaging;
+
+import com.example.entities.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gather the messages of the bus into batches, collapsing the messages of the same user
+ *
+ * A batch is delivered once it holds the maximum number of users, or at the end of the window.
+ * Within a batch, the messages of a user are collapsed as follows :
+ *
+ *  - add then update : add with the last version of the user
+ *  - update then update : the last update
+ *  - add then delete : nothing
+ *  - update then delete : delete
+ *  - delete then add : update with the new user
+ *
+ * The messages of a user keep their order, but a batch lists the users in the order
+ * of their first message, so messages of different users may be reordered.
+ * Messages whose payload is not a user are never collapsed.
+ */
+public class CoalescingSubscriber implements MessageSubscriber
+{
+    private final Logger logger = LoggerFactory.getLogger(CoalescingSubscriber.class);
+
+    private final BatchSubscriber subscriber;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private Map<Object, BusMessage> pending = new LinkedHashMap<>();
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong deliveredMessages = new AtomicLong();
+
+    /**
+     * @param subscriber the subscriber receiving the batches
+     * @param maxBatchSize the number of users after which a batch is delivered
+     * @param windowMillis the longest time a message waits before being delivered
+     * @param threadName the name of the thread delivering the batches at the end of the window
+     */
+    public CoalescingSubscriber(BatchSubscriber subscriber, int maxBatchSize, long windowMillis, String threadName)
+    {
+        this.subscriber = subscriber;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void onMessage(BusMessage message)
+    {
+        receivedMessages.incrementAndGet();
+
+        Object key = message.getPayload() instanceof User ? ((User) message.getPayload()).getEmail() : new Object();
+        BusMessage previous = pending.get(key);
+        if (previous == null)
+        {
+            pending.put(key, message);
+        }
+        else
+        {
+            BusMessage coalesced = coalesce(previous, message);
+            if (coalesced == null)
+            {
+                pending.remove(key);
+            }
+            else
+            {
+                pending.put(key, coalesced);
+            }
+        }
+
+        if (pending.size() >= maxBatchSize)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Deliver the pending messages, if any
+     */
+    public synchronized void flush()
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        List<BusMessage> batch = new ArrayList<>(pending.values());
+        pending = new LinkedHashMap<>();
+        deliveredMessages.addAndGet(batch.size());
+        try
+        {
+            subscriber.onBatch(batch);
+        }
+        catch (RuntimeException exception)
+        {
+            logger.error("The batch subscriber has failed on a batch of " + batch.size() + " messages", exception);
+        }
+    }
+
+    /**
+     * Deliver the pending messages and stop the window
+     */
+    public void close()
+    {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    /**
+     * @return the number of messages received from the bus
+     */
+    public long getReceivedMessages()
+    {
+        return receivedMessages.get();
+    }
+
+    /**
+     * @return the number of messages delivered in batches, after they have been collapsed
+     */
+    public long getDeliveredMessages()
+    {
+        return deliveredMessages.get();
+    }
+
+    /**
+     * @return the message replacing two successive messages of the same user, or null if they cancel out
+     */
+    private static BusMessage coalesce(BusMessage previous, BusMessage next)
+    {
+        String previousTopic = previous.getTopic();
+        String nextTopic = next.getTopic();
+        if (BusMessage.USER_ADD.equals(previousTopic))
+        {
+            if (BusMessage.USER_UPDATE.equals(nextTopic))
+            {
+                return new BusMessage(BusMessage.USER_ADD, next.getPayload());
+            }
+            if (BusMessage.USER_DELETE.equals(nextTopic))
+            {
+                return null;
+            }
+        }
+        else if (BusMessage.USER_DELETE.equals(previousTopic) && BusMessage.USER_ADD.equals(nextTopic))
+        {
+            return new BusMessage(BusMessage.USER_UPDATE, next.getPayload());
+        }
+        return next;
+    }
+}
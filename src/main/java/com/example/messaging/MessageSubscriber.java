@@ -0,0 +1,10 @@
+package com.example.messaging;
+
+/**
+ * Receive the messages published on the {@link MyFakeMessageBus}
+ * Each subscriber is called from its own thread, in the order the messages have been sent
+ */
+public interface MessageSubscriber
+{
+    void onMessage(BusMessage message);
+}
@@ -0,0 +1,34 @@
+package com.example.messaging;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Create the message bus from the application properties
+ *
+ * user.bus.capacity = number of messages the bus can hold, a power of two
+ * user.bus.wait-strategy = sleeping (default), yielding, busy-spin or blocking, see {@link WaitStrategy}
+ * user.bus.overflow = queue (default), block, drop-oldest, drop-newest or spill, see {@link OverflowPolicy}
+ * user.bus.block-timeout-ms = how long a queued message waits for a free slot with the queue and block policies
+ * user.bus.backlog-capacity = number of messages which can be queued with the queue and block policies
+ * user.bus.spill-file = file holding the messages which did not fit with the spill policy
+ */
+@Configuration
+public class MessagingConfiguration
+{
+    @Bean
+    public MyFakeMessageBus messageBus(
+            @Value("${user.bus.capacity:" + MyFakeMessageBus.DEFAULT_CAPACITY + "}") int capacity,
+            @Value("${user.bus.wait-strategy:sleeping}") String waitStrategy,
+            @Value("${user.bus.overflow:queue}") String overflowPolicy,
+            @Value("${user.bus.block-timeout-ms:" + MyFakeMessageBus.DEFAULT_BLOCK_TIMEOUT_MILLIS + "}") long blockTimeoutMillis,
+            @Value("${user.bus.backlog-capacity:" + MyFakeMessageBus.DEFAULT_BACKLOG_CAPACITY + "}") int backlogCapacity,
+            @Value("${user.bus.spill-file:data/bus/spill.dat}") String spillFile)
+    {
+        return new MyFakeMessageBus(capacity, WaitStrategy.fromName(waitStrategy), OverflowPolicy.fromName(overflowPolicy),
+                blockTimeoutMillis, backlogCapacity, Paths.get(spillFile));
+    }
+}
@@ -1,34 +1,480 @@
 package com.example.messaging;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingDeque;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This class is mocking a message bus, it is a simple
- * unlimited blocking queue
+ * This class is mocking a message bus, it is an in-process ring buffer
+ *
+ * Sending a message only claims a slot and publishes it, the subscribers
+ * are called from their own threads so they never slow down the sender.
+ * The ring is bounded : what happens to a message sent while the slowest subscriber
+ * is a whole ring behind depends on the {@link OverflowPolicy}.
+ * Sending never waits, so it can be done while holding a lock : the messages which do not fit
+ * are queued, in order, in a bounded backlog and moved to the ring by the publisher thread of the bus.
+ * Only with the block policy, which has to be chosen explicitly, is the sender given a ticket
+ * to wait for with {@link #awaitSent(long)} once its locks are released.
  */
-public class MyFakeMessageBus
+public class MyFakeMessageBus implements Closeable
 {
-    private static MyFakeMessageBus INSTANCE = null;
-    private final BlockingQueue<BusMessage> messageBus;
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    public static final long DEFAULT_BLOCK_TIMEOUT_MILLIS = 1000;
+    public static final int DEFAULT_BACKLOG_CAPACITY = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(MyFakeMessageBus.class);
+
+    private final RingBuffer ringBuffer;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int backlogCapacity;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final LongAdder droppedMessages = new LongAdder();
+
+    //
+    // Only used by the queue, block and spill policies : once a message has been queued, the following
+    // ones are queued too until the publisher thread has moved them all to the ring.
+    // The queue and block policies queue them in memory, the spill policy in a file
+    //
+    private final Object spillLock = new Object();
+    private final Deque<QueuedMessage> backlog;
+    private final SpillFile spillFile;
+    private Thread publisher;
+    private volatile boolean spilling;
+    private volatile int drainedMessages;
+    private volatile boolean closed;
+
+    //
+    // The number of messages queued in memory, and the number the publisher
+    // has published or dropped. A sender waits until its own message has been counted
+    //
+    private long queuedMessages;
+    private volatile long doneMessages;
+
+    /**
+     * Create a bus queuing the messages while it is full, see {@link OverflowPolicy#QUEUE}
+     */
+    public MyFakeMessageBus(int capacity, WaitStrategy waitStrategy)
+    {
+        this(capacity, waitStrategy, OverflowPolicy.QUEUE, DEFAULT_BLOCK_TIMEOUT_MILLIS, null);
+    }
+
+    public MyFakeMessageBus(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy,
+                            long blockTimeoutMillis, Path spillFile)
+    {
+        this(capacity, waitStrategy, overflowPolicy, blockTimeoutMillis, DEFAULT_BACKLOG_CAPACITY, spillFile);
+    }
 
-    private MyFakeMessageBus()
+    /**
+     * @param capacity the number of messages the bus can hold, must be a power of two
+     * @param waitStrategy how the subscriber threads wait for the next message
+     * @param overflowPolicy what to do with a message sent while the bus is full
+     * @param blockTimeoutMillis how long a queued message waits for a free slot before being dropped,
+     * for the queue and block policies
+     * @param backlogCapacity the number of messages which can be queued, for the queue and block policies
+     * @param spillFile the file holding the messages which did not fit, for the spill policy
+     */
+    public MyFakeMessageBus(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy,
+                            long blockTimeoutMillis, int backlogCapacity, Path spillFile)
     {
-        messageBus = new LinkedBlockingDeque<>();
+        this.ringBuffer = new RingBuffer(capacity, waitStrategy, overflowPolicy != OverflowPolicy.DROP_OLDEST);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.backlogCapacity = backlogCapacity;
+
+        this.spillFile = overflowPolicy == OverflowPolicy.SPILL ? new SpillFile(spillFile) : null;
+        this.backlog = overflowPolicy == OverflowPolicy.QUEUE || overflowPolicy == OverflowPolicy.BLOCK
+                ? new ArrayDeque<>() : null;
     }
 
-    public static MyFakeMessageBus getInstance()
+    /**
+     * Send a message, without waiting even if the bus is full
+     * @param message the message to send
+     * @return the ticket to give to {@link #awaitSent(long)}, 0 if there is nothing to wait for
+     */
+    public long send(BusMessage message)
     {
-        if(INSTANCE == null)
+        long sequence;
+        switch (overflowPolicy)
         {
-            INSTANCE = new MyFakeMessageBus();
+            case QUEUE:
+            case BLOCK:
+            case SPILL:
+                sequence = spilling ? -1 : ringBuffer.tryClaim();
+                if (sequence < 0)
+                {
+                    return spill(message);
+                }
+                break;
+            default:
+                //
+                // Without gating, a claim only fails for drop newest
+                //
+                sequence = ringBuffer.tryClaim();
+                break;
         }
 
-        return INSTANCE;
+        if (sequence < 0)
+        {
+            droppedMessages.increment();
+            return 0;
+        }
+        ringBuffer.publish(sequence, message);
+        return 0;
     }
 
-    public void send(BusMessage message)
+    /**
+     * Send several messages, claiming their slots at once
+     * The messages are published in the order of the list, with no other message in between
+     * unless they do not fit in the bus, in which case they are queued one by one
+     * like with {@link #send(BusMessage)}.
+     * @param messages the messages to send
+     * @return the ticket to give to {@link #awaitSent(long)}, 0 if there is nothing to wait for
+     */
+    public long sendAll(List<BusMessage> messages)
     {
+        long ticket = 0;
+        int capacity = ringBuffer.getCapacity();
+        for (int from = 0; from < messages.size(); from += capacity)
+        {
+            List<BusMessage> chunk = messages.subList(from, Math.min(messages.size(), from + capacity));
+            int count = chunk.size();
+
+            long last;
+            switch (overflowPolicy)
+            {
+                case QUEUE:
+                case BLOCK:
+                case SPILL:
+                    last = spilling ? -1 : ringBuffer.tryClaim(count);
+                    if (last < 0)
+                    {
+                        for (BusMessage message : chunk)
+                        {
+                            ticket = Math.max(ticket, send(message));
+                        }
+                        continue;
+                    }
+                    break;
+                default:
+                    last = ringBuffer.tryClaim(count);
+                    break;
+            }
+
+            if (last < 0)
+            {
+                droppedMessages.add(count);
+                continue;
+            }
+            long sequence = last - count + 1;
+            for (BusMessage message : chunk)
+            {
+                ringBuffer.publish(sequence++, message);
+            }
+        }
+        return ticket;
+    }
 
+    /**
+     * Wait until a message queued by the block policy has been published, or dropped after the timeout
+     * @param ticket the ticket returned when the message was sent
+     */
+    public void awaitSent(long ticket)
+    {
+        if (ticket == 0 || doneMessages >= ticket)
+        {
+            return;
+        }
+        synchronized (spillLock)
+        {
+            try
+            {
+                while (doneMessages < ticket && !closed)
+                {
+                    spillLock.wait();
+                }
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Register a subscriber, it receives all the messages sent from now on
+     * @param subscriber the subscriber to call for each message
+     * @return the subscription, to close to stop receiving the messages
+     */
+    public Subscription subscribe(MessageSubscriber subscriber)
+    {
+        Subscription subscription = new Subscription(ringBuffer, subscriber, droppedMessages,
+                "message-bus-subscriber-" + subscriberCount.incrementAndGet());
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Register a subscriber receiving the messages in batches, the messages of a user being collapsed
+     * See {@link CoalescingSubscriber}
+     * @param subscriber the subscriber to call for each batch
+     * @param maxBatchSize the number of users after which a batch is delivered
+     * @param windowMillis the longest time a message waits before being delivered
+     * @return the subscription, to close to stop receiving the messages
+     */
+    public Subscription subscribe(BatchSubscriber subscriber, int maxBatchSize, long windowMillis)
+    {
+        int id = subscriberCount.incrementAndGet();
+        CoalescingSubscriber coalescingSubscriber = new CoalescingSubscriber(subscriber, maxBatchSize, windowMillis,
+                "message-bus-batches-" + id);
+        Subscription subscription = new Subscription(ringBuffer, coalescingSubscriber, droppedMessages,
+                "message-bus-subscriber-" + id);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription)
+    {
+        if (subscriptions.remove(subscription))
+        {
+            subscription.close();
+        }
+    }
+
+    public int getCapacity()
+    {
+        return ringBuffer.getCapacity();
+    }
+
+    /**
+     * @return the number of messages sent and not yet read by the slowest subscriber, spilled ones included
+     */
+    public long getDepth()
+    {
+        return ringBuffer.getDepth() + getQueuedMessages();
+    }
+
+    /**
+     * @return the number of messages dropped because the bus was full,
+     * with the drop oldest policy a message is counted once per subscriber which has lost it
+     */
+    public long getDroppedMessages()
+    {
+        return droppedMessages.sum();
+    }
+
+    /**
+     * @return the number of messages waiting in the spill file, or taken from it and not yet in the ring
+     */
+    public long getSpilledMessages()
+    {
+        return spillFile == null ? 0 : getQueuedMessages();
+    }
+
+    /**
+     * @return the number of messages waiting for the publisher thread, or taken by it and not yet in the ring
+     */
+    private long getQueuedMessages()
+    {
+        if (spillFile == null && backlog == null)
+        {
+            return 0;
+        }
+        synchronized (spillLock)
+        {
+            return (spillFile != null ? spillFile.size() : backlog.size()) + drainedMessages;
+        }
+    }
+
+    /**
+     * Stop all the subscribers
+     */
+    @Override
+    public void close()
+    {
+        for (Subscription subscription : subscriptions)
+        {
+            unsubscribe(subscription);
+        }
+
+        Thread publisherThread;
+        synchronized (spillLock)
+        {
+            closed = true;
+            publisherThread = publisher;
+            spillLock.notifyAll();
+        }
+        if (publisherThread != null)
+        {
+            publisherThread.interrupt();
+            try
+            {
+                publisherThread.join();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spillFile != null)
+        {
+            synchronized (spillLock)
+            {
+                spillFile.close();
+            }
+        }
+    }
+
+    /**
+     * @return the ticket of the message for the block policy, 0 for the other ones
+     */
+    private long spill(BusMessage message)
+    {
+        synchronized (spillLock)
+        {
+            //
+            // The publisher may have emptied the queue meanwhile
+            //
+            if (!spilling)
+            {
+                long sequence = ringBuffer.tryClaim();
+                if (sequence >= 0)
+                {
+                    ringBuffer.publish(sequence, message);
+                    return 0;
+                }
+                spilling = true;
+                if (spillFile != null)
+                {
+                    logger.warn("The message bus is full, the messages are spilled to disk");
+                }
+                startPublisher();
+                spillLock.notifyAll();
+            }
+
+            if (spillFile != null)
+            {
+                if (!spillFile.append(message))
+                {
+                    droppedMessages.increment();
+                }
+                return 0;
+            }
+            if (backlog.size() >= backlogCapacity)
+            {
+                droppedMessages.increment();
+                return 0;
+            }
+            backlog.add(new QueuedMessage(message, System.nanoTime() + blockTimeoutNanos));
+            long ticket = ++queuedMessages;
+            return overflowPolicy == OverflowPolicy.BLOCK ? ticket : 0;
+        }
+    }
+
+    /**
+     * The publisher is only started once the bus has been full, most buses never need it
+     */
+    private void startPublisher()
+    {
+        if (publisher == null && !closed)
+        {
+            publisher = new Thread(this::publishQueuedMessages, "message-bus-publisher");
+            publisher.setDaemon(true);
+            publisher.start();
+        }
+    }
+
+    /**
+     * Move the queued messages to the ring, in order, as soon as the subscribers free some slots
+     * With the queue and block policies, a message still queued after the timeout is dropped
+     */
+    private void publishQueuedMessages()
+    {
+        try
+        {
+            while (true)
+            {
+                BusMessage message;
+                long deadline = 0;
+                synchronized (spillLock)
+                {
+                    while (!spilling)
+                    {
+                        spillLock.wait();
+                    }
+
+                    if (spillFile != null)
+                    {
+                        message = spillFile.poll();
+                    }
+                    else
+                    {
+                        QueuedMessage queuedMessage = backlog.poll();
+                        message = queuedMessage == null ? null : queuedMessage.message;
+                        deadline = queuedMessage == null ? 0 : queuedMessage.deadlineNanos;
+                    }
+                    if (message == null)
+                    {
+                        spilling = false;
+                        continue;
+                    }
+                    drainedMessages = 1;
+                }
+
+                //
+                // The message is still counted as queued while the publisher waits for a free slot
+                //
+                long sequence = ringBuffer.claim(spillFile != null ? Long.MAX_VALUE
+                        : Math.max(0, deadline - System.nanoTime()));
+                if (sequence < 0 && Thread.currentThread().isInterrupted())
+                {
+                    return;
+                }
+                if (sequence < 0)
+                {
+                    droppedMessages.increment();
+                }
+                else
+                {
+                    ringBuffer.publish(sequence, message);
+                }
+
+                synchronized (spillLock)
+                {
+                    drainedMessages = 0;
+                    if (spillFile == null)
+                    {
+                        doneMessages++;
+                        spillLock.notifyAll();
+                    }
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class QueuedMessage
+    {
+        private final BusMessage message;
+        private final long deadlineNanos;
+
+        private QueuedMessage(BusMessage message, long deadlineNanos)
+        {
+            this.message = message;
+            this.deadlineNanos = deadlineNanos;
+        }
     }
 }
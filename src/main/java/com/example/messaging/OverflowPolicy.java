@@ -0,0 +1,47 @@
+package com.example.messaging;
+
+/**
+ * This enumeration lists what the bus does with a message sent while it is full,
+ * that is while the slowest subscriber is a whole ring behind
+ */
+public enum OverflowPolicy
+{
+    /**
+     * The message is queued in memory and moved to the ring by the publisher thread of the bus,
+     * which waits for a free slot up to a timeout after which the message is dropped.
+     * The senders never wait, a message sent while the queue is full is dropped
+     */
+    QUEUE,
+
+    /**
+     * Like {@link #QUEUE}, but the sender then waits until its message is in the ring or has been dropped,
+     * once it has released its locks, see {@link MyFakeMessageBus#awaitSent(long)}
+     */
+    BLOCK,
+
+    /**
+     * The message overwrites the oldest one, the subscribers which have not read it yet lose it
+     * The senders never wait
+     */
+    DROP_OLDEST,
+
+    /**
+     * The message is dropped, the senders never wait
+     */
+    DROP_NEWEST,
+
+    /**
+     * The message is appended to a file, and the following ones too until the file
+     * has been drained into the ring by a background thread. The senders never wait,
+     * the messages keep their order, but the messages still on disk are lost on a restart
+     */
+    SPILL;
+
+    /**
+     * @param name queue, block, drop-oldest, drop-newest or spill
+     */
+    public static OverflowPolicy fromName(String name)
+    {
+        return valueOf(name.replace('-', '_').toUpperCase());
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.messaging;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring of pre-allocated slots shared by many senders and many subscribers
+ *
+ * A sender claims the next sequence with a CAS, fills the slot of that sequence
+ * and marks it published. Each subscriber follows the ring with its own sequence.
+ * When the ring is gated, a sender never claims a slot that a subscriber has not read yet.
+ * Otherwise the senders overwrite the oldest slots, and a subscriber which has been
+ * overtaken detects it when reading the slot and skips the messages lost.
+ */
+public final class RingBuffer
+{
+    private static final Sequence[] NO_SEQUENCE = new Sequence[0];
+
+    private final AtomicReferenceArray<BusMessage> slots;
+    private final int capacity;
+    private final int mask;
+    private final int indexShift;
+
+    //
+    // The lap of the sequence last published in each slot,
+    // so a subscriber never reads a slot filled for a previous lap
+    //
+    private final AtomicIntegerArray publishedLaps;
+
+    private final Sequence claimed = new Sequence(-1);
+    private final Sequence cachedGatingSequence = new Sequence(-1);
+    private final WaitStrategy waitStrategy;
+    private final boolean gated;
+    private volatile Sequence[] gatingSequences = NO_SEQUENCE;
+
+    /**
+     * @param capacity the number of slots, must be a power of two
+     * @param waitStrategy how the subscribers wait for the next message
+     * @param gated true if the senders must wait for the slowest subscriber, false to overwrite the oldest slots
+     */
+    RingBuffer(int capacity, WaitStrategy waitStrategy, boolean gated)
+    {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("The capacity of the ring buffer must be a power of two, not " + capacity);
+        }
+
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.publishedLaps = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            publishedLaps.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+        this.gated = gated;
+    }
+
+    /**
+     * Claim the next sequence, waiting while the ring is full
+     * @param timeoutNanos the longest time to wait
+     * @return the sequence claimed, or -1 if the ring is still full after the timeout
+     * or if the thread is interrupted
+     */
+    long claim(long timeoutNanos)
+    {
+        return claim(1, timeoutNanos);
+    }
+
+    /**
+     * Claim the next sequences, waiting while the ring does not have enough free slots
+     * @param count the number of sequences, at most the capacity
+     * @param timeoutNanos the longest time to wait
+     * @return the last sequence claimed, or -1 if there are still not enough free slots
+     * after the timeout or if the thread is interrupted
+     */
+    long claim(int count, long timeoutNanos)
+    {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true)
+        {
+            long sequence = tryClaim(count);
+            if (sequence >= 0)
+            {
+                return sequence;
+            }
+            if (System.nanoTime() - deadline >= 0 || Thread.currentThread().isInterrupted())
+            {
+                return -1;
+            }
+            LockSupport.parkNanos(1_000);
+        }
+    }
+
+    /**
+     * Claim the next sequence if a slot is free
+     * @return the sequence claimed, or -1 if the ring is full
+     */
+    long tryClaim()
+    {
+        return tryClaim(1);
+    }
+
+    /**
+     * Claim the next sequences with a single CAS, if there are enough free slots
+     * @param count the number of sequences, at most the capacity
+     * @return the last sequence claimed, or -1 if there are not enough free slots
+     */
+    long tryClaim(int count)
+    {
+        long current;
+        long next;
+        do
+        {
+            current = claimed.get();
+            next = current + count;
+            long wrapPoint = next - capacity;
+            if (gated && wrapPoint > cachedGatingSequence.get())
+            {
+                long minimum = minimumGatingSequence(current);
+                cachedGatingSequence.set(minimum);
+                if (wrapPoint > minimum)
+                {
+                    return -1;
+                }
+            }
+        }
+        while (!claimed.compareAndSet(current, next));
+        return next;
+    }
+
+    /**
+     * Fill the slot of a claimed sequence and make it visible to the subscribers
+     */
+    void publish(long sequence, BusMessage message)
+    {
+        //
+        // The slot is marked invalid while it is filled, so that a subscriber
+        // reading it meanwhile knows the message it has read may be the new one
+        //
+        int index = (int) sequence & mask;
+        publishedLaps.set(index, -1);
+        slots.set(index, message);
+        publishedLaps.set(index, lap(sequence));
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * @return true if the sequence has been published, or overwritten by a later lap
+     */
+    public boolean isPublished(long sequence)
+    {
+        return publishedLaps.get((int) sequence & mask) >= lap(sequence);
+    }
+
+    /**
+     * Read the message of a published sequence
+     * @return the message, or null if the slot has been overwritten by a later lap
+     */
+    BusMessage read(long sequence)
+    {
+        int index = (int) sequence & mask;
+        int lap = lap(sequence);
+        if (publishedLaps.get(index) != lap)
+        {
+            return null;
+        }
+        BusMessage message = slots.get(index);
+        return publishedLaps.get(index) == lap ? message : null;
+    }
+
+    /**
+     * @return the highest sequence such that all the sequences from the given one are published
+     */
+    long highestPublished(long from)
+    {
+        long upTo = claimed.get();
+        for (long sequence = from; sequence <= upTo; sequence++)
+        {
+            if (!isPublished(sequence))
+            {
+                return sequence - 1;
+            }
+        }
+        return upTo;
+    }
+
+    long getClaimed()
+    {
+        return claimed.get();
+    }
+
+    /**
+     * @return the number of messages claimed and not yet read by the slowest subscriber
+     */
+    long getDepth()
+    {
+        long claimedSequence = claimed.get();
+        return Math.min(capacity, claimedSequence - minimumGatingSequence(claimedSequence));
+    }
+
+    int getCapacity()
+    {
+        return capacity;
+    }
+
+    WaitStrategy getWaitStrategy()
+    {
+        return waitStrategy;
+    }
+
+    /**
+     * Start following the ring : the senders will not overwrite what the sequence has not read
+     * @return the gating sequence, starting at the last sequence claimed
+     */
+    synchronized Sequence addGatingSequence()
+    {
+        Sequence sequence = new Sequence(claimed.get());
+        Sequence[] current = gatingSequences;
+        Sequence[] updated = new Sequence[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = sequence;
+        gatingSequences = updated;
+        return sequence;
+    }
+
+    synchronized void removeGatingSequence(Sequence sequence)
+    {
+        Sequence[] current = gatingSequences;
+        for (int i = 0; i < current.length; i++)
+        {
+            if (current[i] == sequence)
+            {
+                Sequence[] updated = new Sequence[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                gatingSequences = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the lowest sequence read by all the subscribers, or the given default when there is none
+     */
+    long minimumGatingSequence(long defaultSequence)
+    {
+        long minimum = defaultSequence;
+        for (Sequence sequence : gatingSequences)
+        {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    private int lap(long sequence)
+    {
+        return (int) (sequence >>> indexShift);
+    }
+}
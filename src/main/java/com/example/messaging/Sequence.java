@@ -0,0 +1,39 @@
+package com.example.messaging;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A counter padded on both sides, so that two sequences updated
+ * by different threads never share a cache line
+ */
+class Sequence
+{
+    private static final AtomicLongFieldUpdater<Sequence> VALUE =
+            AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    @SuppressWarnings("unused")
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    Sequence(long initialValue)
+    {
+        value = initialValue;
+    }
+
+    long get()
+    {
+        return value;
+    }
+
+    void set(long newValue)
+    {
+        value = newValue;
+    }
+
+    boolean compareAndSet(long expected, long newValue)
+    {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.messaging;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spin, then yield, then sleep for short periods between two checks
+ * A good compromise between latency and CPU when the bus is often idle
+ */
+public class SleepingWaitStrategy implements WaitStrategy
+{
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final long SLEEP_NANOS = 100_000;
+
+    @Override
+    public void waitFor(long sequence, RingBuffer ringBuffer) throws InterruptedException
+    {
+        int tries = 0;
+        while (!ringBuffer.isPublished(sequence))
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+
+            tries++;
+            if (tries > YIELD_TRIES)
+            {
+                LockSupport.parkNanos(SLEEP_NANOS);
+            }
+            else if (tries > SPIN_TRIES)
+            {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking()
+    {
+    }
+}
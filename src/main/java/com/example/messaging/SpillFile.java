@@ -0,0 +1,161 @@
+package com.example.messaging;
+
+import com.example.entities.User;
+import com.example.repositories.UserRecordCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file used as a queue of the messages which did not fit in the ring buffer
+ * A message is written as the length of its topic (int), the topic, the length
+ * of the user record (int) and the record. Only the messages about a user can be spilled.
+ *
+ * This class is not thread safe, the bus guards it with its spill lock.
+ */
+class SpillFile implements Closeable
+{
+    private final Path path;
+    private final FileChannel channel;
+    private long readPosition;
+    private long writePosition;
+    private int size;
+
+    /**
+     * Open the spill file, the messages left by a previous run are discarded
+     * @param path the spill file, created if it does not exist
+     */
+    SpillFile(Path path)
+    {
+        this.path = path;
+        try
+        {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null)
+            {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The spill file [" + path + "] cannot be opened", exception);
+        }
+    }
+
+    /**
+     * @return false if the message cannot be spilled because its payload is not a user
+     */
+    boolean append(BusMessage message)
+    {
+        if (!(message.getPayload() instanceof User))
+        {
+            return false;
+        }
+
+        byte[] topic = message.getTopic().getBytes(StandardCharsets.UTF_8);
+        byte[] record = UserRecordCodec.encode((User) message.getPayload());
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + topic.length + record.length);
+        buffer.putInt(topic.length);
+        buffer.put(topic);
+        buffer.putInt(record.length);
+        buffer.put(record);
+        buffer.flip();
+        try
+        {
+            while (buffer.hasRemaining())
+            {
+                writePosition += channel.write(buffer, writePosition);
+            }
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The spill file [" + path + "] cannot be written", exception);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove the oldest message of the file
+     * @return the message, or null if the file is empty
+     */
+    BusMessage poll()
+    {
+        if (size == 0)
+        {
+            return null;
+        }
+
+        try
+        {
+            String topic = StandardCharsets.UTF_8.decode(readField()).toString();
+            User user = UserRecordCodec.decode(readField());
+            size--;
+            if (size == 0)
+            {
+                channel.truncate(0);
+                readPosition = 0;
+                writePosition = 0;
+            }
+            return new BusMessage(topic, user);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The spill file [" + path + "] cannot be read", exception);
+        }
+    }
+
+    /**
+     * @return the number of messages in the file
+     */
+    int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The spill file [" + path + "] cannot be closed", exception);
+        }
+    }
+
+    private ByteBuffer readField() throws IOException
+    {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length);
+        ByteBuffer field = ByteBuffer.allocate(length.getInt(0));
+        readFully(field);
+        field.flip();
+        return field;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, readPosition);
+            if (read < 0)
+            {
+                throw new IOException("Unexpected end of the spill file [" + path + "]");
+            }
+            readPosition += read;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A subscriber attached to the bus, with its own thread following the ring buffer
+ * The messages available are given to the subscriber in batches, in the order they have been sent
+ */
+public class Subscription implements AutoCloseable
+{
+    private final Logger logger = LoggerFactory.getLogger(Subscription.class);
+
+    private final RingBuffer ringBuffer;
+    private final MessageSubscriber subscriber;
+    private final Sequence sequence;
+    private final LongAdder droppedMessages;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param droppedMessages counting the messages overwritten before this subscriber could read them
+     */
+    Subscription(RingBuffer ringBuffer, MessageSubscriber subscriber, LongAdder droppedMessages, String threadName)
+    {
+        this.ringBuffer = ringBuffer;
+        this.subscriber = subscriber;
+        this.droppedMessages = droppedMessages;
+        this.sequence = ringBuffer.addGatingSequence();
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return the number of messages sent and not yet given to the subscriber
+     */
+    public long getLag()
+    {
+        return Math.max(0, ringBuffer.getClaimed() - sequence.get());
+    }
+
+    /**
+     * Stop the thread of the subscriber, the messages it has not read yet are lost
+     * A batch subscriber still receives the messages it has already read
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        ringBuffer.removeGatingSequence(sequence);
+
+        if (subscriber instanceof CoalescingSubscriber)
+        {
+            ((CoalescingSubscriber) subscriber).close();
+        }
+    }
+
+    private void run()
+    {
+        WaitStrategy waitStrategy = ringBuffer.getWaitStrategy();
+        long next = sequence.get() + 1;
+        while (running)
+        {
+            try
+            {
+                waitStrategy.waitFor(next, ringBuffer);
+            }
+            catch (InterruptedException exception)
+            {
+                continue;
+            }
+
+            long available = ringBuffer.highestPublished(next);
+            while (next <= available)
+            {
+                BusMessage message = ringBuffer.read(next);
+                if (message == null)
+                {
+                    //
+                    // The senders have overtaken this subscriber, it resumes at the oldest message left
+                    //
+                    long resume = Math.max(next + 1, ringBuffer.getClaimed() - ringBuffer.getCapacity() + 1);
+                    droppedMessages.add(resume - next);
+                    next = resume;
+                    break;
+                }
+
+                try
+                {
+                    subscriber.onMessage(message);
+                }
+                catch (RuntimeException exception)
+                {
+                    logger.error("The subscriber [" + thread.getName() + "] has failed on a message", exception);
+                }
+                next++;
+            }
+
+            //
+            // The slots are given back to the senders once the whole batch is read
+            //
+            sequence.set(next - 1);
+        }
+    }
+}
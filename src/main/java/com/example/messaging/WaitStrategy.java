@@ -0,0 +1,43 @@
+package com.example.messaging;
+
+/**
+ * How a subscriber thread waits for the next message to be published
+ * The strategies trade latency against the CPU burnt while the bus is idle
+ */
+public interface WaitStrategy
+{
+    /**
+     * Wait until the given sequence has been published
+     * @param sequence the sequence to wait for
+     * @param ringBuffer the ring buffer the sequence belongs to
+     * @throws InterruptedException if the subscriber thread is stopped meanwhile
+     */
+    void waitFor(long sequence, RingBuffer ringBuffer) throws InterruptedException;
+
+    /**
+     * Called after each publication, to wake up the subscribers if the strategy blocks them
+     */
+    void signalAllWhenBlocking();
+
+    /**
+     * @param name busy-spin, yielding, sleeping or blocking
+     * @return a new wait strategy
+     */
+    static WaitStrategy fromName(String name)
+    {
+        switch (name)
+        {
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "sleeping":
+                return new SleepingWaitStrategy();
+            case "blocking":
+                return new BlockingWaitStrategy();
+            default:
+                throw new IllegalArgumentException("The wait strategy [" + name + "] does not exist," +
+                        " it must be one of busy-spin, yielding, sleeping or blocking");
+        }
+    }
+}
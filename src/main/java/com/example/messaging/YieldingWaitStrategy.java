@@ -0,0 +1,31 @@
+package com.example.messaging;
+
+/**
+ * Spin a little, then yield the core to other threads between two checks
+ */
+public class YieldingWaitStrategy implements WaitStrategy
+{
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public void waitFor(long sequence, RingBuffer ringBuffer) throws InterruptedException
+    {
+        int tries = 0;
+        while (!ringBuffer.isPublished(sequence))
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            if (++tries > SPIN_TRIES)
+            {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking()
+    {
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations, cheap enough to be recorded on every request
+ *
+ * Each power of two of nanoseconds is split in 4 buckets, so a percentile is reported at most 25% above
+ * the actual duration. The buckets are {@link LongAdder}s, the threads recording at the same time
+ * update different cells rather than contending on a single counter.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos the duration to record, a negative one is recorded as 0
+     */
+    public void record(long nanos)
+    {
+        long duration = Math.max(0, nanos);
+        buckets[bucketOf(duration)].increment();
+        count.increment();
+        totalNanos.add(duration);
+        maxNanos.accumulate(duration);
+    }
+
+    /**
+     * @return the count, mean, percentiles and maximum of the durations recorded so far
+     */
+    public Summary summarize()
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+        return new Summary(total, total == 0 ? 0 : totalNanos.sum() / total,
+                percentile(counts, total, 0.5, max), percentile(counts, total, 0.99, max),
+                percentile(counts, total, 0.999, max), max);
+    }
+
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * @return the largest value of the bucket
+     */
+    static long highestValueOf(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double percentile, long max)
+    {
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && seen > 0)
+            {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The durations recorded by a histogram, in microseconds
+     */
+    public static final class Summary
+    {
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double p999Micros;
+        private final double maxMicros;
+
+        private Summary(long count, long meanNanos, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos)
+        {
+            this.count = count;
+            this.meanMicros = micros(meanNanos);
+            this.p50Micros = micros(p50Nanos);
+            this.p99Micros = micros(p99Nanos);
+            this.p999Micros = micros(p999Nanos);
+            this.maxMicros = micros(maxNanos);
+        }
+
+        private static double micros(long nanos)
+        {
+            return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public double getMeanMicros()
+        {
+            return meanMicros;
+        }
+
+        public double getP50Micros()
+        {
+            return p50Micros;
+        }
+
+        public double getP99Micros()
+        {
+            return p99Micros;
+        }
+
+        public double getP999Micros()
+        {
+            return p999Micros;
+        }
+
+        public double getMaxMicros()
+        {
+            return maxMicros;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.metrics;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Record the latency of every request on the users, see {@link RequestMetricsInterceptor}
+ * The metrics are read on GET /metrics
+ */
+@Configuration
+public class MetricsConfiguration implements WebMvcConfigurer
+{
+    @Bean
+    public RequestMetricsInterceptor requestMetricsInterceptor()
+    {
+        return new RequestMetricsInterceptor();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry)
+    {
+        registry.addInterceptor(requestMetricsInterceptor()).addPathPatterns("/user/**");
+    }
+}
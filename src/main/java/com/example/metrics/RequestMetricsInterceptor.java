@@ -0,0 +1,66 @@
+package com.example.metrics;
+
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record the latency of the requests, for each endpoint
+ * An endpoint is the HTTP method and the pattern of the mapping, e.g. GET /user/{email},
+ * so that the requests on different users share the same histogram
+ * The latency runs from the handler being chosen until the response has been written
+ */
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter
+{
+    private static final String START_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".start";
+
+    private final ConcurrentHashMap<String, LatencyHistogram> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+    {
+        //
+        // A handler run on another thread is dispatched again to write its response, see ExecutionMode,
+        // the request started with the first dispatch
+        //
+        if (request.getAttribute(START_ATTRIBUTE) == null)
+        {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception exception)
+    {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (start == null || pattern == null)
+        {
+            return;
+        }
+
+        long elapsed = System.nanoTime() - (Long) start;
+        endpoints.computeIfAbsent(request.getMethod() + " " + pattern, endpoint -> new LatencyHistogram())
+                .record(elapsed);
+    }
+
+    /**
+     * @return the latencies of each endpoint called at least once, by endpoint
+     */
+    public Map<String, LatencyHistogram.Summary> summarize()
+    {
+        Map<String, LatencyHistogram.Summary> summaries = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> endpoint : endpoints.entrySet())
+        {
+            summaries.put(endpoint.getKey(), endpoint.getValue().summarize());
+        }
+        return summaries;
+    }
+}
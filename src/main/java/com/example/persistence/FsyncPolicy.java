@@ -0,0 +1,25 @@
+package com.example.persistence;
+
+/**
+ * This enumeration lists when the write-ahead log forces its records to the disk
+ */
+public enum FsyncPolicy
+{
+    /**
+     * A mutation returns once its record has been forced to the disk
+     * The concurrent mutations share the same fsync (group commit)
+     */
+    ALWAYS,
+
+    /**
+     * The records are written and forced every interval, a mutation does not wait for it
+     * Up to one interval of mutations can be lost on a crash of the machine
+     */
+    PERIODIC,
+
+    /**
+     * The records are written every interval but never forced, the OS decides when
+     * they reach the disk. Only a crash of the machine can lose mutations
+     */
+    ASYNC
+}
@@ -0,0 +1,38 @@
+package com.example.persistence;
+
+import com.example.entities.User;
+
+import java.util.List;
+
+/**
+ * Receive the mutations read back from the disk when recovering the users
+ */
+public interface MutationHandler
+{
+    /**
+     * A user has been created or updated
+     * @param user the last version of the user
+     */
+    void onPut(User user);
+
+    /**
+     * Many users have been created or updated, e.g. the users of a snapshot
+     * @param users the last version of the users, by ranges, in the order they were written
+     */
+    default void onPutAll(List<List<User>> users)
+    {
+        for (List<User> range : users)
+        {
+            for (User user : range)
+            {
+                onPut(user);
+            }
+        }
+    }
+
+    /**
+     * A user has been deleted
+     * @param email the email of the user deleted
+     */
+    void onDelete(String email);
+}
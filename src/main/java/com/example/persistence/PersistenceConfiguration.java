@@ -0,0 +1,43 @@
+package com.example.persistence;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Create the write-ahead log when it is enabled in the application properties
+ *
+ * user.wal.enabled = true to log the mutations on users
+ * user.wal.directory = directory of the log segments
+ * user.wal.fsync = always, periodic (default) or async, see {@link FsyncPolicy}
+ * user.wal.fsync-interval-ms = interval between two writes for the periodic and async policies
+ *
+ * user.snapshot.enabled = true to write snapshots, requires the write-ahead log
+ * user.snapshot.directory = directory of the snapshots
+ * user.snapshot.interval-seconds = interval between two snapshots
+ */
+@Configuration
+public class PersistenceConfiguration
+{
+    @Bean
+    @ConditionalOnProperty(name = "user.wal.enabled", havingValue = "true")
+    public WriteAheadLog writeAheadLog(
+            @Value("${user.wal.directory:data/wal}") String directory,
+            @Value("${user.wal.fsync:periodic}") String fsyncPolicy,
+            @Value("${user.wal.fsync-interval-ms:10}") long intervalMillis)
+    {
+        return new WriteAheadLog(Paths.get(directory), FsyncPolicy.valueOf(fsyncPolicy.toUpperCase()), intervalMillis);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "user.snapshot.enabled", havingValue = "true")
+    public SnapshotManager snapshotManager(
+            @Value("${user.snapshot.directory:data/snapshots}") String directory,
+            @Value("${user.snapshot.interval-seconds:300}") long intervalSeconds)
+    {
+        return new SnapshotManager(Paths.get(directory), intervalSeconds);
+    }
+}
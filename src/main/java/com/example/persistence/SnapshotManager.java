@@ -0,0 +1,358 @@
+package com.example.persistence;
+
+import com.example.entities.User;
+import com.example.repositories.UserRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write and load snapshots of the whole user set, so that the startup only
+ * replays the tail of the write-ahead log following the last snapshot
+ *
+ * A snapshot starts with a magic number (int), the format version (int) and the sequence
+ * of the last mutation it contains (long). Then come the users, each one as the length
+ * of its record (int) followed by the record. It ends with the number of users (int)
+ * and the CRC32 of the users (int).
+ *
+ * A snapshot is fuzzy : the users are read while they keep being modified, the
+ * mutations following the sequence of the snapshot are replayed from the log on top of it.
+ *
+ * A snapshot is mapped by windows of at most 2GB, the largest buffer that can be mapped, and the users
+ * of a window are decoded by ranges, in parallel, then given to the handler together, see
+ * {@link MutationHandler#onPutAll(List)}.
+ */
+public class SnapshotManager implements Closeable
+{
+    private static final int MAGIC = 0x55534e50;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int FOOTER_SIZE = 2 * Integer.BYTES;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    private static final int RANGE_USERS = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(SnapshotManager.class);
+
+    private final Path directory;
+    private final long intervalSeconds;
+    private final int windowSize;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param directory the directory holding the snapshots, created if it does not exist
+     * @param intervalSeconds the interval between two snapshots
+     */
+    public SnapshotManager(Path directory, long intervalSeconds)
+    {
+        this(directory, intervalSeconds, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * @param directory the directory holding the snapshots, created if it does not exist
+     * @param intervalSeconds the interval between two snapshots
+     * @param windowSize the maximum size of the part of a snapshot mapped at once
+     */
+    SnapshotManager(Path directory, long intervalSeconds, int windowSize)
+    {
+        this.directory = directory;
+        this.intervalSeconds = intervalSeconds;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Load the most recent valid snapshot, the file is memory mapped and decoded in place
+     * @param handler receiving the users of the snapshot
+     * @return the sequence of the snapshot loaded, or 0 if there is none
+     */
+    public long load(MutationHandler handler)
+    {
+        try
+        {
+            Files.createDirectories(directory);
+            List<Path> snapshots = listSnapshots();
+            Collections.reverse(snapshots);
+            for (Path snapshot : snapshots)
+            {
+                long start = System.nanoTime();
+                int count = read(snapshot, handler);
+                if (count < 0)
+                {
+                    logger.warn("The snapshot [" + snapshot + "] is invalid, trying an older one");
+                    continue;
+                }
+
+                logger.info("The snapshot [" + snapshot + "] of " + count + " users has been loaded in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                return sequence(snapshot);
+            }
+            return 0;
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The snapshots [" + directory + "] cannot be loaded", exception);
+        }
+    }
+
+    /**
+     * Write a snapshot, then delete the older ones
+     * The snapshot is written to a temporary file first, and renamed once it is complete
+     * @param sequence the sequence of the last mutation the users contain
+     * @param users the users to write
+     */
+    public void write(long sequence, Iterable<User> users)
+    {
+        long start = System.nanoTime();
+        Path snapshot = snapshotPath(sequence);
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try
+        {
+            Files.createDirectories(directory);
+            int count = 0;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                OutputStream fileOutput = Channels.newOutputStream(channel);
+                DataOutputStream header = new DataOutputStream(fileOutput);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeLong(sequence);
+
+                CRC32 crc = new CRC32();
+                DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(fileOutput, 1024 * 1024), crc));
+                for (User user : users)
+                {
+                    byte[] record = UserRecordCodec.encode(user);
+                    output.writeInt(record.length);
+                    output.write(record);
+                    count++;
+                }
+                output.flush();
+
+                DataOutputStream footer = new DataOutputStream(fileOutput);
+                footer.writeInt(count);
+                footer.writeInt((int) crc.getValue());
+                channel.force(true);
+            }
+
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Path older : listSnapshots())
+            {
+                if (sequence(older) < sequence)
+                {
+                    Files.deleteIfExists(older);
+                }
+            }
+            logger.info("The snapshot [" + snapshot + "] of " + count + " users has been written in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The snapshot [" + snapshot + "] cannot be written", exception);
+        }
+    }
+
+    /**
+     * Run the given task at the interval of the snapshots, in a background thread
+     * @param snapshotTask the task taking a snapshot
+     */
+    public synchronized void schedule(Runnable snapshotTask)
+    {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                snapshotTask.run();
+            }
+            catch (RuntimeException exception)
+            {
+                logger.error("The snapshot has failed", exception);
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Map a snapshot and decode its users
+     * The whole snapshot is checked before the first user is given to the handler
+     * @return the number of users, or -1 if the snapshot is truncated or corrupted
+     */
+    private int read(Path snapshot, MutationHandler handler) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE)
+            {
+                return -1;
+            }
+
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            {
+                return -1;
+            }
+
+            long bodyEnd = size - FOOTER_SIZE;
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, bodyEnd, FOOTER_SIZE);
+            int count = footer.getInt();
+            int expectedCrc = footer.getInt();
+
+            //
+            // The CRC is computed on the mapped body before anything is decoded
+            //
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[64 * 1024];
+            for (long windowStart = HEADER_SIZE; windowStart < bodyEnd; windowStart += windowSize)
+            {
+                ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(windowSize, bodyEnd - windowStart));
+                while (body.hasRemaining())
+                {
+                    int length = Math.min(chunk.length, body.remaining());
+                    body.get(chunk, 0, length);
+                    crc.update(chunk, 0, length);
+                }
+            }
+            if ((int) crc.getValue() != expectedCrc)
+            {
+                return -1;
+            }
+
+            //
+            // A window ends on the last record it holds entirely, the next one starts on the following record
+            //
+            long windowStart = HEADER_SIZE;
+            while (windowStart < bodyEnd)
+            {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(windowSize, bodyEnd - windowStart));
+                List<ByteBuffer> ranges = new ArrayList<>();
+                int rangeStart = 0;
+                int rangeUsers = 0;
+                while (window.remaining() >= Integer.BYTES)
+                {
+                    int length = window.getInt(window.position());
+                    if (length > window.remaining() - Integer.BYTES)
+                    {
+                        break;
+                    }
+                    window.position(window.position() + Integer.BYTES + length);
+                    if (++rangeUsers == RANGE_USERS)
+                    {
+                        ranges.add(range(window, rangeStart));
+                        rangeStart = window.position();
+                        rangeUsers = 0;
+                    }
+                }
+                if (rangeUsers > 0)
+                {
+                    ranges.add(range(window, rangeStart));
+                }
+                if (window.position() == 0)
+                {
+                    throw new IOException("A record of the snapshot [" + snapshot + "] at byte [" + windowStart
+                            + "] does not fit in a window of " + windowSize + " bytes");
+                }
+
+                handler.onPutAll(ranges.parallelStream().map(SnapshotManager::decode).collect(Collectors.toList()));
+                windowStart += window.position();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return the records of the window from the given offset to its position
+     */
+    private static ByteBuffer range(ByteBuffer window, int rangeStart)
+    {
+        ByteBuffer range = window.duplicate();
+        range.limit(window.position());
+        range.position(rangeStart);
+        return range.slice();
+    }
+
+    private static List<User> decode(ByteBuffer range)
+    {
+        List<User> users = new ArrayList<>();
+        while (range.hasRemaining())
+        {
+            int length = range.getInt();
+            ByteBuffer record = range.slice();
+            record.limit(length);
+            users.add(UserRecordCodec.decode(record));
+            range.position(range.position() + length);
+        }
+        return users;
+    }
+
+    private List<Path> listSnapshots() throws IOException
+    {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX))
+        {
+            for (Path path : stream)
+            {
+                snapshots.add(path);
+            }
+        }
+
+        //
+        // The sequence in the name is zero padded, so the lexical order is the sequence order
+        //
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private Path snapshotPath(long sequence)
+    {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+
+    private static long sequence(Path snapshot)
+    {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
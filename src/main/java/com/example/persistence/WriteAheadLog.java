@@ -0,0 +1,587 @@
+package com.example.persistence;
+
+import com.example.entities.User;
+import com.example.repositories.UserRecordCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of the mutations on users, replayed at startup
+ *
+ * The mutations are appended to an in-memory batch, a dedicated thread writes
+ * the batch to the current segment and forces it to the disk according to the
+ * {@link FsyncPolicy}. All the mutations appended while a batch is being
+ * forced are written together by the next one.
+ *
+ * A record is written as the length of its payload (int), its type (byte),
+ * its sequence (long), the payload and the CRC32 of everything but the length (int).
+ * The log is split in segments named after the sequence of their first record.
+ */
+public class WriteAheadLog implements Closeable
+{
+    public static final byte CREATE = 1;
+    public static final byte UPDATE = 2;
+    public static final byte DELETE = 3;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+    private static final int TRAILER_SIZE = Integer.BYTES;
+    private static final int INITIAL_BATCH_SIZE = 64 * 1024;
+    private static final int EAGER_FLUSH_SIZE = 1024 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long intervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private final Condition batchWritten = lock.newCondition();
+
+    //
+    // All these fields are guarded by the lock
+    //
+    private ByteBuffer pendingBatch = ByteBuffer.allocate(INITIAL_BATCH_SIZE);
+    private ByteBuffer spareBatch = ByteBuffer.allocate(INITIAL_BATCH_SIZE);
+    private long lastSequence;
+    private long writtenSequence;
+    private IOException failure;
+    private boolean rollRequested;
+    private boolean closed;
+
+    //
+    // Only used by the writer thread once the log is recovered
+    //
+    private FileChannel segment;
+    private long segmentFirstSequence;
+    private Thread writer;
+
+    /**
+     * @param directory the directory holding the segments, created if it does not exist
+     * @param fsyncPolicy when the records are forced to the disk
+     * @param intervalMillis the interval between two writes for the periodic and async policies
+     */
+    public WriteAheadLog(Path directory, FsyncPolicy fsyncPolicy, long intervalMillis)
+    {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * Replay all the mutations of the log, then open a new segment for the next ones
+     * Must be called once, before any mutation is appended
+     * @param handler receiving the mutations, in the order they have been appended
+     */
+    public void recover(MutationHandler handler)
+    {
+        recover(0, handler);
+    }
+
+    /**
+     * Replay the mutations of the log following the given sequence, then open a new segment for the next ones
+     * Must be called once, before any mutation is appended
+     * @param fromSequence the sequence of the last mutation already recovered by other means, e.g. a snapshot
+     * @param handler receiving the mutations, in the order they have been appended
+     */
+    public void recover(long fromSequence, MutationHandler handler)
+    {
+        try
+        {
+            Files.createDirectories(directory);
+            lastSequence = fromSequence;
+            for (Path segmentPath : listSegments())
+            {
+                replaySegment(segmentPath, fromSequence, handler);
+            }
+
+            segmentFirstSequence = lastSequence + 1;
+            segment = FileChannel.open(segmentPath(segmentFirstSequence), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            writtenSequence = lastSequence;
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The write-ahead log [" + directory + "] cannot be recovered", exception);
+        }
+
+        writer = new Thread(this::writeBatches, "write-ahead-log");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("The write-ahead log [" + directory + "] has been recovered up to sequence " + lastSequence);
+    }
+
+    public long logCreate(User user)
+    {
+        return logCreate(user, true);
+    }
+
+    public long logUpdate(User user)
+    {
+        return logUpdate(user, true);
+    }
+
+    public long logDelete(String email)
+    {
+        return logDelete(email, true);
+    }
+
+    /**
+     * @param waitForDisk false to return before the record is on the disk, even with the
+     *                    {@link FsyncPolicy#ALWAYS} policy, see {@link #awaitDurable(long)}
+     * @return the sequence of the record
+     */
+    public long logCreate(User user, boolean waitForDisk)
+    {
+        return append(CREATE, UserRecordCodec.encode(user), waitForDisk);
+    }
+
+    public long logUpdate(User user, boolean waitForDisk)
+    {
+        return append(UPDATE, UserRecordCodec.encode(user), waitForDisk);
+    }
+
+    public long logDelete(String email, boolean waitForDisk)
+    {
+        return append(DELETE, email.getBytes(StandardCharsets.UTF_8), waitForDisk);
+    }
+
+    /**
+     * With the {@link FsyncPolicy#ALWAYS} policy, wait until the record of the given sequence
+     * and all the records before it are on the disk, so that many records share a single fsync
+     * @param sequence the sequence of the last record to wait for
+     */
+    public void awaitDurable(long sequence)
+    {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS)
+        {
+            return;
+        }
+
+        lock.lock();
+        try
+        {
+            batchReady.signal();
+            while (writtenSequence < sequence && failure == null)
+            {
+                batchWritten.awaitUninterruptibly();
+            }
+            checkFailure();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence of the last record appended
+     */
+    public long getLastSequence()
+    {
+        lock.lock();
+        try
+        {
+            return lastSequence;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ask the writer thread to start a new segment with its next batch
+     * so that the current one can be deleted once it is covered by a snapshot
+     */
+    public void roll()
+    {
+        lock.lock();
+        try
+        {
+            rollRequested = true;
+            batchReady.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete the segments holding only records up to the given sequence
+     * The most recent segment is always kept, as it may be the one being written
+     * @param sequence the sequence up to which the records are not needed anymore
+     */
+    public void deleteSegmentsUpTo(long sequence)
+    {
+        try
+        {
+            List<Path> segments = listSegments();
+            for (int i = 0; i < segments.size() - 1; i++)
+            {
+                //
+                // A segment ends right before the first sequence of the next one
+                //
+                if (firstSequence(segments.get(i + 1)) <= sequence + 1)
+                {
+                    Files.deleteIfExists(segments.get(i));
+                    logger.info("The segment [" + segments.get(i) + "] has been deleted");
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            logger.error("The segments of the write-ahead log [" + directory + "] cannot be deleted", exception);
+        }
+    }
+
+    /**
+     * Stop the writer thread once the pending records are written and forced to the disk
+     */
+    @Override
+    public void close()
+    {
+        lock.lock();
+        try
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            batchReady.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        try
+        {
+            if (writer != null)
+            {
+                writer.join();
+            }
+            if (segment != null)
+            {
+                segment.close();
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The write-ahead log [" + directory + "] cannot be closed", exception);
+        }
+    }
+
+    /**
+     * Append a record to the pending batch
+     * With the {@link FsyncPolicy#ALWAYS} policy, wait until the record is on the disk if asked to
+     * @return the sequence of the record
+     */
+    private long append(byte type, byte[] payload, boolean waitForDisk)
+    {
+        lock.lock();
+        try
+        {
+            if (writer == null || closed)
+            {
+                throw new IllegalStateException("The write-ahead log [" + directory + "] is not open");
+            }
+            checkFailure();
+
+            long sequence = ++lastSequence;
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(longBytes(sequence));
+            crc.update(payload);
+
+            ensureCapacity(HEADER_SIZE + payload.length + TRAILER_SIZE);
+            pendingBatch.putInt(payload.length);
+            pendingBatch.put(type);
+            pendingBatch.putLong(sequence);
+            pendingBatch.put(payload);
+            pendingBatch.putInt((int) crc.getValue());
+
+            if (fsyncPolicy == FsyncPolicy.ALWAYS && waitForDisk)
+            {
+                batchReady.signal();
+                while (writtenSequence < sequence && failure == null)
+                {
+                    batchWritten.awaitUninterruptibly();
+                }
+                checkFailure();
+            }
+            else if (pendingBatch.position() >= EAGER_FLUSH_SIZE)
+            {
+                batchReady.signal();
+            }
+
+            return sequence;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The loop of the writer thread : take the pending batch, write it and force it
+     * while the next batch is being filled
+     */
+    private void writeBatches()
+    {
+        while (true)
+        {
+            ByteBuffer batch;
+            long batchSequence;
+            long batchFirstSequence;
+            boolean roll;
+            boolean last;
+
+            lock.lock();
+            try
+            {
+                if (fsyncPolicy == FsyncPolicy.ALWAYS)
+                {
+                    while (pendingBatch.position() == 0 && !closed && !rollRequested)
+                    {
+                        batchReady.awaitUninterruptibly();
+                    }
+                }
+                else if (!closed)
+                {
+                    try
+                    {
+                        batchReady.awaitNanos(intervalNanos);
+                    }
+                    catch (InterruptedException exception)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                batch = pendingBatch;
+                pendingBatch = spareBatch;
+                spareBatch = null;
+                batchSequence = lastSequence;
+                batchFirstSequence = writtenSequence + 1;
+                roll = rollRequested && batchFirstSequence != segmentFirstSequence;
+                rollRequested = false;
+                last = closed;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            IOException batchFailure = null;
+            try
+            {
+                if (roll)
+                {
+                    segment.force(false);
+                    segment.close();
+                    segmentFirstSequence = batchFirstSequence;
+                    segment = FileChannel.open(segmentPath(segmentFirstSequence), StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                }
+
+                batch.flip();
+                boolean empty = !batch.hasRemaining();
+                while (batch.hasRemaining())
+                {
+                    segment.write(batch);
+                }
+                if ((!empty && fsyncPolicy != FsyncPolicy.ASYNC) || last)
+                {
+                    segment.force(false);
+                }
+            }
+            catch (IOException exception)
+            {
+                logger.error("The write-ahead log [" + directory + "] cannot be written", exception);
+                batchFailure = exception;
+            }
+            batch.clear();
+
+            lock.lock();
+            try
+            {
+                spareBatch = batch;
+                if (batchFailure == null)
+                {
+                    writtenSequence = batchSequence;
+                }
+                else
+                {
+                    failure = batchFailure;
+                }
+                batchWritten.signalAll();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            if (last || batchFailure != null)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the records of a segment, a corrupted or truncated record ends the segment
+     */
+    private void replaySegment(Path segmentPath, long fromSequence, MutationHandler handler) throws IOException
+    {
+        long segmentSize = Files.size(segmentPath);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath))))
+        {
+            while (true)
+            {
+                int length;
+                try
+                {
+                    length = input.readInt();
+                }
+                catch (EOFException exception)
+                {
+                    return;
+                }
+
+                try
+                {
+                    byte type = input.readByte();
+                    long sequence = input.readLong();
+                    if (length < 0 || length > segmentSize)
+                    {
+                        throw new IOException("Invalid record length " + length);
+                    }
+                    byte[] payload = new byte[length];
+                    input.readFully(payload);
+                    int expectedCrc = input.readInt();
+
+                    CRC32 crc = new CRC32();
+                    crc.update(type);
+                    crc.update(longBytes(sequence));
+                    crc.update(payload);
+                    if ((int) crc.getValue() != expectedCrc)
+                    {
+                        throw new IOException("Invalid CRC for the record " + sequence);
+                    }
+
+                    if (sequence > fromSequence)
+                    {
+                        apply(type, payload, handler);
+                        lastSequence = Math.max(lastSequence, sequence);
+                    }
+                }
+                catch (IOException exception)
+                {
+                    logger.warn("The segment [" + segmentPath + "] ends with an invalid record, the rest is ignored : "
+                            + exception.getMessage());
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void apply(byte type, byte[] payload, MutationHandler handler) throws IOException
+    {
+        switch (type)
+        {
+            case CREATE:
+            case UPDATE:
+                handler.onPut(UserRecordCodec.decode(ByteBuffer.wrap(payload)));
+                break;
+            case DELETE:
+                handler.onDelete(new String(payload, StandardCharsets.UTF_8));
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException
+    {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (Path path : stream)
+            {
+                segments.add(path);
+            }
+        }
+
+        //
+        // The sequence in the name is zero padded, so the lexical order is the sequence order
+        //
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstSequence(Path segmentPath)
+    {
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Path segmentPath(long firstSequence)
+    {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private void ensureCapacity(int recordSize)
+    {
+        if (pendingBatch.remaining() < recordSize)
+        {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pendingBatch.capacity() * 2,
+                    pendingBatch.position() + recordSize));
+            pendingBatch.flip();
+            larger.put(pendingBatch);
+            pendingBatch = larger;
+        }
+    }
+
+    private void checkFailure()
+    {
+        if (failure != null)
+        {
+            throw new UncheckedIOException("The write-ahead log [" + directory + "] has failed", failure);
+        }
+    }
+
+    private static byte[] longBytes(long value)
+    {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A repository keeping the users in a file on disk
+ * Only the email and the position of each record stay on the heap.
+ *
+ * The file is append only : an update appends the new version of the user
+ * and a deletion appends a tombstone. The file is rewritten with the live
+ * records only once it has grown to twice their size.
+ *
+ * A record is written as its length (int), its type (byte), its payload
+ * and the CRC32 of the type and the payload (int).
+ * The writes are not forced to the disk, except when the repository is closed.
+ */
+public class FileUserRepository implements UserRepository
+{
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64 * 1024 * 1024;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final int TRAILER_SIZE = Integer.BYTES;
+
+    private final Logger logger = LoggerFactory.getLogger(FileUserRepository.class);
+
+    private final Path path;
+    private final long compactionThreshold;
+    private final Map<String, Long> positions = new ConcurrentHashMap<>();
+
+    //
+    // Reads only need the read lock, appends and compactions
+    // take the write lock as they move the end of the file
+    //
+    private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private long endPosition;
+    private long liveBytes;
+
+    public FileUserRepository(Path path)
+    {
+        this(path, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Open the repository, loading the position of the users already stored in the file
+     * @param path the file holding the users, created if it does not exist
+     * @param compactionThreshold the size under which the file is never compacted
+     */
+    public FileUserRepository(Path path, long compactionThreshold)
+    {
+        this.path = path;
+        this.compactionThreshold = compactionThreshold;
+        try
+        {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null)
+            {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            load();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The user file [" + path + "] cannot be opened", exception);
+        }
+    }
+
+    @Override
+    public User get(String email)
+    {
+        fileLock.readLock().lock();
+        try
+        {
+            Long position = positions.get(email);
+            return position == null ? null : readUser(position);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The user with email [" + email + "] cannot be read", exception);
+        }
+        finally
+        {
+            fileLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String email)
+    {
+        return positions.containsKey(email);
+    }
+
+    @Override
+    public User put(String email, User user)
+    {
+        fileLock.writeLock().lock();
+        try
+        {
+            byte[] record = UserRecordCodec.encode(user);
+            long position = append(PUT, record);
+            liveBytes += recordSize(record.length);
+
+            Long previousPosition = positions.put(email, position);
+            User previous = null;
+            if (previousPosition != null)
+            {
+                previous = readUser(previousPosition);
+                liveBytes -= recordSize(readLength(previousPosition));
+            }
+
+            compactIfNeeded();
+            return previous;
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The user with email [" + email + "] cannot be written", exception);
+        }
+        finally
+        {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public User remove(String email)
+    {
+        fileLock.writeLock().lock();
+        try
+        {
+            Long position = positions.remove(email);
+            if (position == null)
+            {
+                return null;
+            }
+
+            User previous = readUser(position);
+            liveBytes -= recordSize(readLength(position));
+            append(DELETE, email.getBytes(StandardCharsets.UTF_8));
+
+            compactIfNeeded();
+            return previous;
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The user with email [" + email + "] cannot be removed", exception);
+        }
+        finally
+        {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return positions.size();
+    }
+
+    @Override
+    public Iterator<User> iterator()
+    {
+        return new LookupIterator(positions.keySet().iterator(), this::get);
+    }
+
+    @Override
+    public void close()
+    {
+        fileLock.writeLock().lock();
+        try
+        {
+            channel.force(true);
+            channel.close();
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The user file [" + path + "] cannot be closed", exception);
+        }
+        finally
+        {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scan the file to find the position of the last version of every user
+     * A truncated or corrupted tail, left by a crash during a write, is cut off
+     */
+    private void load() throws IOException
+    {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (position + HEADER_SIZE + TRAILER_SIZE <= size)
+        {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int length = header.getInt();
+            byte type = header.get();
+            if (length < 0 || position + HEADER_SIZE + (long) length + TRAILER_SIZE > size)
+            {
+                break;
+            }
+
+            ByteBuffer payload = readPayload(position, length);
+            if (payload == null || (type != PUT && type != DELETE))
+            {
+                break;
+            }
+
+            if (type == PUT)
+            {
+                String email = UserRecordCodec.decode(payload).getEmail();
+                Long previousPosition = positions.put(email, position);
+                if (previousPosition != null)
+                {
+                    liveBytes -= recordSize(readLength(previousPosition));
+                }
+                liveBytes += recordSize(length);
+            }
+            else
+            {
+                String email = StandardCharsets.UTF_8.decode(payload).toString();
+                Long previousPosition = positions.remove(email);
+                if (previousPosition != null)
+                {
+                    liveBytes -= recordSize(readLength(previousPosition));
+                }
+            }
+            position += recordSize(length);
+        }
+
+        if (position < size)
+        {
+            logger.warn("The user file [" + path + "] has an invalid tail at position " + position + ", it is truncated");
+            channel.truncate(position);
+        }
+        endPosition = position;
+    }
+
+    private long append(byte type, byte[] payload) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(recordSize(payload.length));
+        record.putInt(payload.length);
+        record.put(type);
+        record.put(payload);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long position = endPosition;
+        while (record.hasRemaining())
+        {
+            channel.write(record, endPosition + record.position());
+        }
+        endPosition += record.limit();
+        return position;
+    }
+
+    private User readUser(long position) throws IOException
+    {
+        return UserRecordCodec.decode(readPayload(position, readLength(position)));
+    }
+
+    private int readLength(long position) throws IOException
+    {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, position);
+        return length.getInt(0);
+    }
+
+    /**
+     * Read the payload of a record and check its CRC
+     * @return the payload, or null if the CRC does not match
+     */
+    private ByteBuffer readPayload(long position, int length) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(1 + length + TRAILER_SIZE);
+        readFully(record, position + Integer.BYTES);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, 1 + length);
+        if ((int) crc.getValue() != record.getInt(1 + length))
+        {
+            return null;
+        }
+
+        record.position(1);
+        record.limit(1 + length);
+        return record.slice();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of the user file [" + path + "]");
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file with the live records only, once the file is twice their size
+     * The new file replaces the current one atomically
+     */
+    private void compactIfNeeded() throws IOException
+    {
+        if (endPosition < compactionThreshold || endPosition < 2 * liveBytes)
+        {
+            return;
+        }
+
+        Path compactedPath = path.resolveSibling(path.getFileName() + ".compact");
+        Map<String, Long> compactedPositions = new ConcurrentHashMap<>();
+        long compactedEnd = 0;
+        try (FileChannel compacted = FileChannel.open(compactedPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            for (Map.Entry<String, Long> entry : positions.entrySet())
+            {
+                long position = entry.getValue();
+                ByteBuffer record = ByteBuffer.allocate(recordSize(readLength(position)));
+                readFully(record, position);
+                record.flip();
+
+                compactedPositions.put(entry.getKey(), compactedEnd);
+                while (record.hasRemaining())
+                {
+                    compactedEnd += compacted.write(record, compactedEnd);
+                }
+            }
+            compacted.force(true);
+        }
+
+        channel.close();
+        Files.move(compactedPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        positions.putAll(compactedPositions);
+        endPosition = compactedEnd;
+        logger.info("The user file [" + path + "] has been compacted to " + compactedEnd + " bytes");
+    }
+
+    private static int recordSize(int payloadLength)
+    {
+        return HEADER_SIZE + payloadLength + TRAILER_SIZE;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A repository keeping the users as objects on the heap
+ * This is the fastest backend, but the whole user set counts against the heap
+ */
+public class InMemoryUserRepository implements UserRepository
+{
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+
+    @Override
+    public User get(String email)
+    {
+        return users.get(email);
+    }
+
+    @Override
+    public boolean containsKey(String email)
+    {
+        return users.containsKey(email);
+    }
+
+    @Override
+    public User put(String email, User user)
+    {
+        return users.put(email, user);
+    }
+
+    @Override
+    public User remove(String email)
+    {
+        return users.remove(email);
+    }
+
+    @Override
+    public int size()
+    {
+        return users.size();
+    }
+
+    @Override
+    public Iterator<User> iterator()
+    {
+        return users.values().iterator();
+    }
+}
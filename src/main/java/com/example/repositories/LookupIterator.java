@@ -0,0 +1,56 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Iterate users by looking up a list of emails one after another
+ * The users removed since their email has been listed are skipped
+ */
+class LookupIterator implements Iterator<User>
+{
+    private final Iterator<String> emails;
+    private final Function<String, User> lookup;
+    private User next;
+
+    LookupIterator(Iterator<String> emails, Function<String, User> lookup)
+    {
+        this.emails = emails;
+        this.lookup = lookup;
+        this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return next != null;
+    }
+
+    @Override
+    public User next()
+    {
+        if (next == null)
+        {
+            throw new NoSuchElementException();
+        }
+        User user = next;
+        next = advance();
+        return user;
+    }
+
+    private User advance()
+    {
+        while (emails.hasNext())
+        {
+            User user = lookup.apply(emails.next());
+            if (user != null)
+            {
+                return user;
+            }
+        }
+        return null;
+    }
+}
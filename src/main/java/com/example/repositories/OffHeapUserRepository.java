@@ -0,0 +1,314 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A repository keeping the encoded users in direct memory, outside of the heap
+ * Only the email and the address of each record stay on the heap.
+ *
+ * Records are appended to fixed size chunks and never modified in place,
+ * so a reader can decode a record without any lock. A chunk is given
+ * back once all the records it holds have been replaced or removed.
+ *
+ * A full chunk is compacted once it is twice the size of its live records, like the file of
+ * the {@link FileUserRepository} : its live records are copied at the end of the current chunk,
+ * so the chunk is given back, and the direct memory stays within twice the size of the users
+ * plus a chunk, whatever the order of the updates.
+ */
+public class OffHeapUserRepository implements UserRepository
+{
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final int chunkSize;
+
+    //
+    // The address of a record is the chunk id in the high 32 bits
+    // and the offset of the record in the chunk in the low 32 bits
+    //
+    private final Map<String, Long> addresses = new ConcurrentHashMap<>();
+    private final Map<Integer, Chunk> chunks = new ConcurrentHashMap<>();
+
+    //
+    // Guarded by this
+    //
+    private Chunk currentChunk;
+    private int nextChunkId;
+    private final Deque<Chunk> sparseChunks = new ArrayDeque<>();
+    private boolean compacting;
+
+    public OffHeapUserRepository()
+    {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the size in bytes of the direct buffers allocated
+     */
+    public OffHeapUserRepository(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+        this.currentChunk = newChunk();
+    }
+
+    @Override
+    public User get(String email)
+    {
+        while (true)
+        {
+            Long address = addresses.get(email);
+            if (address == null)
+            {
+                return null;
+            }
+
+            //
+            // The chunk may have been released if the record has been
+            // replaced meanwhile, in which case the new address is read
+            //
+            Chunk chunk = chunks.get(chunkId(address));
+            if (chunk != null)
+            {
+                ByteBuffer record = chunk.buffer.duplicate();
+                record.position(offset(address) + Integer.BYTES);
+                return UserRecordCodec.decode(record);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(String email)
+    {
+        return addresses.containsKey(email);
+    }
+
+    @Override
+    public User put(String email, User user)
+    {
+        long address = append(UserRecordCodec.encode(user));
+        Long previousAddress = addresses.put(email, address);
+        if (previousAddress == null)
+        {
+            return null;
+        }
+
+        User previous = read(previousAddress);
+        release(previousAddress);
+        return previous;
+    }
+
+    @Override
+    public User remove(String email)
+    {
+        Long address = addresses.remove(email);
+        if (address == null)
+        {
+            return null;
+        }
+
+        User previous = read(address);
+        release(address);
+        return previous;
+    }
+
+    @Override
+    public int size()
+    {
+        return addresses.size();
+    }
+
+    @Override
+    public Iterator<User> iterator()
+    {
+        return new LookupIterator(addresses.keySet().iterator(), this::get);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        addresses.clear();
+        chunks.clear();
+    }
+
+    /**
+     * Copy a record at the end of the current chunk
+     * @param record the encoded user
+     * @return the address of the record
+     */
+    private synchronized long append(byte[] record)
+    {
+        int size = Integer.BYTES + record.length;
+        if (size > chunkSize)
+        {
+            throw new IllegalArgumentException("A record of " + size + " bytes does not fit in a chunk of " +
+                    chunkSize + " bytes");
+        }
+
+        if (currentChunk.buffer.remaining() < size)
+        {
+            Chunk fullChunk = currentChunk;
+            currentChunk = newChunk();
+            compactIfNeeded(fullChunk);
+        }
+
+        ByteBuffer buffer = currentChunk.buffer;
+        int offset = buffer.position();
+        buffer.putInt(record.length);
+        buffer.put(record);
+        currentChunk.liveBytes.addAndGet(size);
+
+        return ((long) currentChunk.id << 32) | offset;
+    }
+
+    private User read(long address)
+    {
+        ByteBuffer record = chunks.get(chunkId(address)).buffer.duplicate();
+        record.position(offset(address) + Integer.BYTES);
+        return UserRecordCodec.decode(record);
+    }
+
+    /**
+     * Account for a record which is not referenced anymore
+     * The chunk is dropped when it holds no more live record, or compacted when it is mostly dead records
+     */
+    private synchronized void release(long address)
+    {
+        Chunk chunk = chunks.get(chunkId(address));
+        chunk.liveBytes.addAndGet(-(Integer.BYTES + chunk.buffer.getInt(offset(address))));
+        compactIfNeeded(chunk);
+    }
+
+    /**
+     * Drop a full chunk without live record, or compact it once it is twice the size of its live records
+     * The chunks found while compacting, e.g. the chunk filled by the records copied, wait for the compaction in progress
+     */
+    private void compactIfNeeded(Chunk chunk)
+    {
+        long liveBytes = chunk.liveBytes.get();
+        if (chunk == currentChunk)
+        {
+            return;
+        }
+        if (liveBytes == 0)
+        {
+            chunks.remove(chunk.id);
+            return;
+        }
+        if (chunk.compacted || chunk.buffer.position() < 2 * liveBytes)
+        {
+            return;
+        }
+
+        chunk.compacted = true;
+        sparseChunks.add(chunk);
+        if (compacting)
+        {
+            return;
+        }
+        compacting = true;
+        try
+        {
+            Chunk sparseChunk;
+            while ((sparseChunk = sparseChunks.poll()) != null)
+            {
+                compact(sparseChunk);
+            }
+        }
+        finally
+        {
+            compacting = false;
+        }
+    }
+
+    /**
+     * Copy the live records of a chunk at the end of the current chunk
+     * A record is live if its email still has its address. The records whose user is replaced or removed
+     * while they are copied are released by the writer, then the chunk is dropped by the last release.
+     */
+    private void compact(Chunk chunk)
+    {
+        ByteBuffer records = chunk.buffer.duplicate();
+        int end = records.position();
+        records.position(0);
+        while (records.position() < end)
+        {
+            int offset = records.position();
+            byte[] record = new byte[records.getInt()];
+            records.get(record);
+
+            String email = UserRecordCodec.decode(ByteBuffer.wrap(record)).getEmail();
+            long address = ((long) chunk.id << 32) | offset;
+            Long currentAddress = addresses.get(email);
+            if (currentAddress == null || currentAddress != address)
+            {
+                continue;
+            }
+
+            long copyAddress = append(record);
+            if (addresses.replace(email, address, copyAddress))
+            {
+                chunk.liveBytes.addAndGet(-(Integer.BYTES + record.length));
+            }
+            else
+            {
+                //
+                // Replaced or removed meanwhile, the copy is not referenced
+                //
+                Chunk copyChunk = chunks.get(chunkId(copyAddress));
+                copyChunk.liveBytes.addAndGet(-(Integer.BYTES + record.length));
+                compactIfNeeded(copyChunk);
+            }
+        }
+
+        if (chunk.liveBytes.get() == 0)
+        {
+            chunks.remove(chunk.id);
+        }
+    }
+
+    /**
+     * @return the number of chunks of direct memory allocated
+     */
+    int chunkCount()
+    {
+        return chunks.size();
+    }
+
+    private Chunk newChunk()
+    {
+        Chunk chunk = new Chunk(nextChunkId++, ByteBuffer.allocateDirect(chunkSize));
+        chunks.put(chunk.id, chunk);
+        return chunk;
+    }
+
+    private static int chunkId(long address)
+    {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address)
+    {
+        return (int) address;
+    }
+
+    private static class Chunk
+    {
+        private final int id;
+        private final ByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private boolean compacted;
+
+        private Chunk(int id, ByteBuffer buffer)
+        {
+            this.id = id;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of a user, used by the repositories storing users outside of the heap
+ * A record is the list of the user fields, each one written as
+ * its length (int) followed by its UTF-8 bytes
+ */
+public final class UserRecordCodec
+{
+    private UserRecordCodec()
+    {
+    }
+
+    /**
+     * Encode a user
+     * @param user the user to encode
+     * @return the record of the user
+     */
+    public static byte[] encode(User user)
+    {
+        byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] firstname = user.getFirstname().getBytes(StandardCharsets.UTF_8);
+        byte[] lastname = user.getLastname().getBytes(StandardCharsets.UTF_8);
+        byte[] nickname = user.getNickname().getBytes(StandardCharsets.UTF_8);
+        byte[] password = user.getPassword().getBytes(StandardCharsets.UTF_8);
+        byte[] country = user.getCountry().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(6 * Integer.BYTES + email.length + firstname.length +
+                lastname.length + nickname.length + password.length + country.length);
+        putField(buffer, email);
+        putField(buffer, firstname);
+        putField(buffer, lastname);
+        putField(buffer, nickname);
+        putField(buffer, password);
+        putField(buffer, country);
+
+        return buffer.array();
+    }
+
+    /**
+     * Decode a user from the current position of the buffer
+     * The position of the buffer is moved after the record
+     * @param buffer the buffer holding the record
+     * @return the user decoded
+     */
+    public static User decode(ByteBuffer buffer)
+    {
+        String email = getField(buffer);
+        String firstname = getField(buffer);
+        String lastname = getField(buffer);
+        String nickname = getField(buffer);
+        String password = getField(buffer);
+        String country = getField(buffer);
+
+        return new User(firstname, lastname, nickname, email, password, country);
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] field)
+    {
+        buffer.putInt(field.length);
+        buffer.put(field);
+    }
+
+    private static String getField(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        String field;
+        if (buffer.hasArray())
+        {
+            field = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        else
+        {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            field = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return field;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.repositories;
+
+import com.example.entities.User;
+
+import java.io.Closeable;
+
+/**
+ * The storage of users, keyed by email
+ * Implementations must be thread safe, but the caller is responsible
+ * for serializing the writes on a given email
+ */
+public interface UserRepository extends Iterable<User>, Closeable
+{
+    /**
+     * @param email the email of the user
+     * @return the user with the given email, or null if there is none
+     */
+    User get(String email);
+
+    /**
+     * @param email the email of the user
+     * @return whether a user with the given email is stored
+     */
+    boolean containsKey(String email);
+
+    /**
+     * Store a user, replacing the previous one with the same email
+     * @param email the email of the user
+     * @param user the user to store
+     * @return the previous user with this email, or null if there was none
+     */
+    User put(String email, User user);
+
+    /**
+     * Remove a user
+     * @param email the email of the user
+     * @return the user removed, or null if there was none
+     */
+    User remove(String email);
+
+    /**
+     * @return the number of users stored
+     */
+    int size();
+
+    /**
+     * Release the resources held by the repository
+     */
+    @Override
+    default void close()
+    {
+    }
+}
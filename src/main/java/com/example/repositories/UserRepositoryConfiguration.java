@@ -0,0 +1,43 @@
+package com.example.repositories;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Select the {@link UserRepository} backend from the application properties
+ *
+ * user.repository.type = memory (default), offheap or file
+ * user.repository.offheap.chunk-size = size in bytes of the off-heap chunks
+ * user.repository.file.path = path of the file used by the file backend
+ */
+@Configuration
+public class UserRepositoryConfiguration
+{
+    private final Logger logger = LoggerFactory.getLogger(UserRepositoryConfiguration.class);
+
+    @Bean
+    public UserRepository userRepository(
+            @Value("${user.repository.type:memory}") String type,
+            @Value("${user.repository.offheap.chunk-size:" + OffHeapUserRepository.DEFAULT_CHUNK_SIZE + "}") int chunkSize,
+            @Value("${user.repository.file.path:data/users.dat}") String filePath)
+    {
+        logger.info("Using the [" + type + "] user repository");
+        switch (type)
+        {
+            case "memory":
+                return new InMemoryUserRepository();
+            case "offheap":
+                return new OffHeapUserRepository(chunkSize);
+            case "file":
+                return new FileUserRepository(Paths.get(filePath));
+            default:
+                throw new IllegalArgumentException("The user repository type [" + type + "] does not exist," +
+                        " it must be one of memory, offheap or file");
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.services;
+
+import com.example.entities.Criteria;
+import com.example.entities.FacetCount;
+import com.example.entities.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Secondary indexes on users, one per {@link Criteria}
+ * Each index maps a (lowercased) value to the emails of the users holding that value,
+ * sorted by the row id of the users, so that the matching users can be read in pages
+ * The number of users of each value is kept up to date, it is the selectivity used by the {@link QueryPlanner}
+ * The indexes are thread safe, but updates of a given user must be serialized by the caller
+ */
+class CriteriaIndex
+{
+    //
+    // Never written, it stands for the values without any user
+    //
+    private static final Posting EMPTY = new Posting();
+
+    private final Map<Criteria, ConcurrentHashMap<String, Posting>> indexes = new EnumMap<>(Criteria.class);
+
+    /**
+     * The emails of the users holding a value, by row id, with their number
+     * The size of a skip list is computed by walking it, so it is counted aside
+     */
+    static final class Posting extends ConcurrentSkipListMap<Long, String>
+    {
+        private final AtomicInteger users = new AtomicInteger();
+
+        /**
+         * @return the number of users holding the value
+         */
+        int users()
+        {
+            return users.get();
+        }
+
+        private void add(long rowId, String email)
+        {
+            if (put(rowId, email) == null)
+            {
+                users.incrementAndGet();
+            }
+        }
+
+        private void delete(long rowId)
+        {
+            if (remove(rowId) != null)
+            {
+                users.decrementAndGet();
+            }
+        }
+    }
+
+    CriteriaIndex()
+    {
+        for (Criteria criteria : Criteria.values())
+        {
+            if (!criteria.equals(Criteria.UNDEFINED))
+            {
+                indexes.put(criteria, new ConcurrentHashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Index a new user
+     * @param user the user to index
+     * @param rowId the row id of the user
+     */
+    void add(User user, long rowId)
+    {
+        for (Map.Entry<Criteria, ConcurrentHashMap<String, Posting>> entry : indexes.entrySet())
+        {
+            addEmail(entry.getValue(), entry.getKey().extractValue(user), rowId, user.getEmail());
+        }
+    }
+
+    /**
+     * Index many new users at once, each criteria by its own thread
+     * A value is looked up once for all the users holding it, rather than once per user,
+     * and the row ids of a value are appended in ascending order
+     * The caller must prevent any other update while the users are indexed
+     * @param users the new users, by blocks of consecutive row ids
+     * @param firstRowIds the row id of the first user of each block
+     */
+    void addAll(List<List<User>> users, long[] firstRowIds)
+    {
+        indexes.entrySet().parallelStream().forEach(entry ->
+        {
+            Criteria criteria = entry.getKey();
+            Map<String, Posting> emailsByValue = new HashMap<>();
+            for (int block = 0; block < users.size(); block++)
+            {
+                long rowId = firstRowIds[block];
+                for (User user : users.get(block))
+                {
+                    String value = criteria.extractValue(user);
+                    Posting emails = emailsByValue.get(value);
+                    if (emails == null)
+                    {
+                        emails = entry.getValue().computeIfAbsent(value, key -> new Posting());
+                        emailsByValue.put(value, emails);
+                    }
+                    emails.add(rowId++, user.getEmail());
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove a user from all indexes
+     * @param user the user to remove, as it is currently indexed
+     * @param rowId the row id of the user
+     */
+    void remove(User user, long rowId)
+    {
+        for (Map.Entry<Criteria, ConcurrentHashMap<String, Posting>> entry : indexes.entrySet())
+        {
+            removeEmail(entry.getValue(), entry.getKey().extractValue(user), rowId);
+        }
+    }
+
+    /**
+     * Re-index a user whose fields changed
+     * Only the criteria whose value actually changed are touched
+     * @param previous the user as it is currently indexed
+     * @param current the new version of the user
+     * @param rowId the row id of the user
+     */
+    void update(User previous, User current, long rowId)
+    {
+        for (Map.Entry<Criteria, ConcurrentHashMap<String, Posting>> entry : indexes.entrySet())
+        {
+            Criteria criteria = entry.getKey();
+            String previousValue = criteria.extractValue(previous);
+            String currentValue = criteria.extractValue(current);
+            if (!previousValue.equals(currentValue))
+            {
+                addEmail(entry.getValue(), currentValue, rowId, current.getEmail());
+                removeEmail(entry.getValue(), previousValue, rowId);
+            }
+        }
+    }
+
+    /**
+     * Get the emails of the users matching the given criteria and value
+     * The returned map is a live view, it may change while being iterated
+     * @param criteria an indexed criteria
+     * @param value the lowercased value to look for
+     * @return the matching emails by row id, or null if the criteria is not indexed
+     */
+    NavigableMap<Long, String> find(Criteria criteria, String value)
+    {
+        return posting(criteria, value);
+    }
+
+    /**
+     * Same as {@link #find}, with the number of users of the value
+     */
+    Posting posting(Criteria criteria, String value)
+    {
+        Map<String, Posting> index = indexes.get(criteria);
+        if (index == null)
+        {
+            return null;
+        }
+
+        Posting emails = index.get(value);
+        return emails == null ? EMPTY : emails;
+    }
+
+    /**
+     * @param criteria an indexed criteria
+     * @return the number of distinct values of the criteria
+     */
+    int distinctValues(Criteria criteria)
+    {
+        Map<String, Posting> index = indexes.get(criteria);
+        return index == null ? 0 : index.size();
+    }
+
+    /**
+     * Get the values held by the most users, reading the counters of the values only
+     * @param criteria an indexed criteria
+     * @param limit the maximum number of values to return
+     * @return the values and their number of users, the most frequent first, then in alphabetical order
+     */
+    List<FacetCount> top(Criteria criteria, int limit)
+    {
+        Map<String, Posting> index = indexes.get(criteria);
+        if (index == null)
+        {
+            return Collections.emptyList();
+        }
+
+        //
+        // Keep the best values in a heap whose head is the worst of them
+        //
+        Comparator<FacetCount> order = Comparator.comparingInt(FacetCount::getCount).reversed()
+                .thenComparing(FacetCount::getValue);
+        PriorityQueue<FacetCount> best = new PriorityQueue<>(order.reversed());
+        for (Map.Entry<String, Posting> entry : index.entrySet())
+        {
+            int users = entry.getValue().users();
+            if (users == 0)
+            {
+                continue;
+            }
+            FacetCount count = new FacetCount(entry.getKey(), users);
+            if (best.size() < limit)
+            {
+                best.add(count);
+            }
+            else if (order.compare(count, best.peek()) < 0)
+            {
+                best.poll();
+                best.add(count);
+            }
+        }
+
+        List<FacetCount> top = new ArrayList<>(best);
+        top.sort(order);
+        return top;
+    }
+
+    //
+    // Both operations run inside compute so that an empty set is never
+    // removed while a concurrent writer is adding an email to it
+    //
+
+    private static void addEmail(ConcurrentHashMap<String, Posting> index, String value,
+                                 long rowId, String email)
+    {
+        index.compute(value, (key, emails) ->
+        {
+            Posting result = emails == null ? new Posting() : emails;
+            result.add(rowId, email);
+            return result;
+        });
+    }
+
+    private static void removeEmail(ConcurrentHashMap<String, Posting> index, String value,
+                                    long rowId)
+    {
+        index.computeIfPresent(value, (key, emails) ->
+        {
+            emails.delete(rowId);
+            return emails.isEmpty() ? null : emails;
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.services;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * The opaque cursor given to the clients to get the next page of users
+ * It is the version of the format (byte) and the last row id returned (long), in base64
+ */
+final class PageCursor
+{
+    private static final byte VERSION = 1;
+    private static final int SIZE = 1 + Long.BYTES;
+
+    private PageCursor()
+    {
+    }
+
+    static String encode(long rowId)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.put(VERSION);
+        buffer.putLong(rowId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param cursor the cursor given by the client, null or empty for the first page
+     * @return the last row id returned by the previous page, or 0 for the first page
+     */
+    static long decode(String cursor)
+    {
+        if (cursor == null || cursor.isEmpty())
+        {
+            return 0;
+        }
+
+        byte[] bytes;
+        try
+        {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            bytes = null;
+        }
+        if (bytes == null || bytes.length != SIZE || bytes[0] != VERSION)
+        {
+            throw new IllegalArgumentException("The cursor [" + cursor + "] is not valid");
+        }
+        return ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong();
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.services;
+
+import com.example.entities.Criteria;
+import com.example.entities.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted indexes of the names of the users, to find the users whose name starts with a prefix
+ * Each index is a skip list keyed by the (lowercased) name followed by the email, so that the
+ * users of a prefix are a single range of keys, already in the order of their names
+ * The indexes are thread safe, but updates of a given user must be serialized by the caller
+ */
+class PrefixIndex
+{
+    static final List<Criteria> FIELDS = Arrays.asList(Criteria.NICKNAME, Criteria.FIRSTNAME, Criteria.LASTNAME);
+
+    //
+    // Lower than any character of a name, so that "john" and its users come before "johnny"
+    //
+    private static final char SEPARATOR = '\u0000';
+
+    private final Map<Criteria, ConcurrentSkipListMap<String, String>> indexes = new EnumMap<>(Criteria.class);
+
+    PrefixIndex()
+    {
+        for (Criteria field : FIELDS)
+        {
+            indexes.put(field, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    /**
+     * Index a new user
+     * @param user the user to index
+     */
+    void add(User user)
+    {
+        for (Map.Entry<Criteria, ConcurrentSkipListMap<String, String>> entry : indexes.entrySet())
+        {
+            entry.getValue().put(key(entry.getKey().extractValue(user), user.getEmail()), user.getEmail());
+        }
+    }
+
+    /**
+     * Remove a user from all indexes
+     * @param user the user to remove, as it is currently indexed
+     */
+    void remove(User user)
+    {
+        for (Map.Entry<Criteria, ConcurrentSkipListMap<String, String>> entry : indexes.entrySet())
+        {
+            entry.getValue().remove(key(entry.getKey().extractValue(user), user.getEmail()));
+        }
+    }
+
+    /**
+     * Re-index a user whose names changed, only the names that actually changed are touched
+     * @param previous the user as it is currently indexed
+     * @param current the new version of the user
+     */
+    void update(User previous, User current)
+    {
+        for (Map.Entry<Criteria, ConcurrentSkipListMap<String, String>> entry : indexes.entrySet())
+        {
+            String previousValue = entry.getKey().extractValue(previous);
+            String currentValue = entry.getKey().extractValue(current);
+            if (!previousValue.equals(currentValue))
+            {
+                entry.getValue().put(key(currentValue, current.getEmail()), current.getEmail());
+                entry.getValue().remove(key(previousValue, previous.getEmail()));
+            }
+        }
+    }
+
+    /**
+     * Index many new users at once, each field by its own thread
+     * The keys are sorted first, a skip list is much faster to fill in the order of its keys
+     * @param users the new users
+     */
+    void addAll(List<List<User>> users)
+    {
+        indexes.entrySet().parallelStream().forEach(entry ->
+        {
+            List<String[]> entries = new ArrayList<>();
+            for (List<User> block : users)
+            {
+                for (User user : block)
+                {
+                    entries.add(new String[] { key(entry.getKey().extractValue(user), user.getEmail()), user.getEmail() });
+                }
+            }
+            entries.sort(Comparator.comparing(keyAndEmail -> keyAndEmail[0]));
+            for (String[] keyAndEmail : entries)
+            {
+                entry.getValue().put(keyAndEmail[0], keyAndEmail[1]);
+            }
+        });
+    }
+
+    /**
+     * Get the first users, in the order of their names, with a name starting with the given prefix
+     * A user whose several names match is returned once, for the first of them
+     * @param prefix the lowercased prefix
+     * @param fields the fields to search, among {@link #FIELDS}
+     * @param limit the maximum number of users to return
+     * @return the emails of the users
+     */
+    List<String> find(String prefix, List<Criteria> fields, int limit)
+    {
+        //
+        // A field gives one key per user, so the first keys of each field hold at least
+        // as many distinct users as the limit, and the keys after them are not needed
+        //
+        List<String> keys = new ArrayList<>();
+        for (Criteria field : fields)
+        {
+            ConcurrentSkipListMap<String, String> index = indexes.get(field);
+            int count = 0;
+            for (String key : index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet())
+            {
+                if (count++ == limit)
+                {
+                    break;
+                }
+                keys.add(key);
+            }
+        }
+        if (fields.size() > 1)
+        {
+            keys.sort(null);
+        }
+
+        Set<String> emails = new LinkedHashSet<>();
+        for (int i = 0; i < keys.size() && emails.size() < limit; i++)
+        {
+            String key = keys.get(i);
+            emails.add(key.substring(key.lastIndexOf(SEPARATOR) + 1));
+        }
+        return new ArrayList<>(emails);
+    }
+
+    private static String key(String name, String email)
+    {
+        return name + SEPARATOR + email;
+    }
+}
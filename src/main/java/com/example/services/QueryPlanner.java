@@ -0,0 +1,286 @@
+package com.example.services;
+
+import com.example.services.CriteriaIndex.Posting;
+import com.example.services.UserQuery.Condition;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Choose how to read the users matching a {@link UserQuery}
+ *
+ * In a group of conditions joined by AND, the condition with the fewest users, as counted by
+ * the {@link CriteriaIndex}, drives the read : its posting is iterated, and each user is checked
+ * against the other conditions by a {@link UserColumns.Probe}, which reads the fields of the user
+ * in the columns rather than looking its row id up in the other postings. A group whose
+ * condition has no user is skipped without reading anything. A group of conditions that are
+ * not indexed is read by a probe of all users.
+ * The groups joined by OR are read together, merged in the order of the row ids.
+ */
+final class QueryPlanner
+{
+    private final CriteriaIndex criteriaIndex;
+    private final UserColumns columns;
+    private final NavigableMap<Long, String> rows;
+
+    /**
+     * @param criteriaIndex the indexes and their statistics
+     * @param columns the fields of the users, checked against the conditions not read from an index
+     * @param rows the emails of all users by row id, read by a scan
+     */
+    QueryPlanner(CriteriaIndex criteriaIndex, UserColumns columns, NavigableMap<Long, String> rows)
+    {
+        this.criteriaIndex = criteriaIndex;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * The plan of a group of conditions joined by AND
+     */
+    static final class GroupPlan
+    {
+        private final NavigableMap<Long, String> driver;
+        private final UserColumns.Probe probe;
+        private final long estimate;
+        private final String description;
+
+        /**
+         * @param probe the conditions left to check, or null if the driver gives the users of the group
+         */
+        private GroupPlan(NavigableMap<Long, String> driver, UserColumns.Probe probe,
+                          long estimate, String description)
+        {
+            this.driver = driver;
+            this.probe = probe;
+            this.estimate = estimate;
+            this.description = description;
+        }
+
+        /**
+         * @return the maximum number of users read for the group
+         */
+        long getEstimate()
+        {
+            return estimate;
+        }
+
+        @Override
+        public String toString()
+        {
+            return description;
+        }
+
+        private Iterator<Map.Entry<Long, String>> rowsAfter(long afterRowId)
+        {
+            Iterator<Map.Entry<Long, String>> candidates = driver.tailMap(afterRowId, false).entrySet().iterator();
+            if (probe == null)
+            {
+                return candidates;
+            }
+            return new FilteringIterator(candidates, probe);
+        }
+    }
+
+    /**
+     * Plan the groups of a query, the groups without any user are left out
+     * @param query the query to plan
+     * @return the plan of each group that may match
+     */
+    List<GroupPlan> plan(UserQuery query)
+    {
+        List<GroupPlan> plans = new ArrayList<>();
+        for (List<Condition> group : query.getGroups())
+        {
+            GroupPlan plan = plan(group);
+            if (plan.estimate > 0)
+            {
+                plans.add(plan);
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * Read the emails matching the plans, by row id, following the given one
+     * The emails are only candidates : the indexes are read without lock,
+     * so the users must be checked against the query again
+     * @param plans the plans of the groups of the query
+     * @param afterRowId the last row id already read
+     * @return the candidate emails, in the order of the row ids, without duplicates
+     */
+    static Iterator<Map.Entry<Long, String>> rowsAfter(List<GroupPlan> plans, long afterRowId)
+    {
+        if (plans.size() == 1)
+        {
+            return plans.get(0).rowsAfter(afterRowId);
+        }
+
+        List<Iterator<Map.Entry<Long, String>>> groups = new ArrayList<>(plans.size());
+        for (GroupPlan plan : plans)
+        {
+            groups.add(plan.rowsAfter(afterRowId));
+        }
+        return new MergingIterator(groups);
+    }
+
+    private GroupPlan plan(List<Condition> group)
+    {
+        List<Condition> indexed = new ArrayList<>();
+        List<Posting> postings = new ArrayList<>();
+        List<Condition> residuals = new ArrayList<>();
+        for (Condition condition : group)
+        {
+            Posting posting = criteriaIndex.posting(condition.getCriteria(), condition.getValue());
+            if (posting != null)
+            {
+                indexed.add(condition);
+                postings.add(posting);
+            }
+            else
+            {
+                residuals.add(condition);
+            }
+        }
+
+        if (indexed.isEmpty())
+        {
+            UserColumns.Probe probe = columns.probe(residuals);
+            return new GroupPlan(rows, probe, columns.size(), "scan probe " + probe);
+        }
+
+        //
+        // The counts are read once, they keep changing while the plan is made
+        //
+        int[] counts = postings.stream().mapToInt(Posting::users).toArray();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++)
+        {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt(i -> counts[i]));
+
+        for (int i = 1; i < order.size(); i++)
+        {
+            residuals.add(indexed.get(order.get(i)));
+        }
+        StringBuilder description = new StringBuilder("read ").append(indexed.get(order.get(0)))
+                .append(" (").append(counts[order.get(0)]).append(" users)");
+        UserColumns.Probe probe = null;
+        if (!residuals.isEmpty())
+        {
+            probe = columns.probe(residuals);
+            description.append(" probe ").append(probe);
+        }
+        return new GroupPlan(postings.get(order.get(0)), probe, counts[order.get(0)], description.toString());
+    }
+
+    /**
+     * Keep the entries whose user matches the probe
+     */
+    private static final class FilteringIterator implements Iterator<Map.Entry<Long, String>>
+    {
+        private final Iterator<Map.Entry<Long, String>> candidates;
+        private final UserColumns.Probe probe;
+        private Map.Entry<Long, String> next;
+
+        private FilteringIterator(Iterator<Map.Entry<Long, String>> candidates, UserColumns.Probe probe)
+        {
+            this.candidates = candidates;
+            this.probe = probe;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (next == null && candidates.hasNext())
+            {
+                Map.Entry<Long, String> candidate = candidates.next();
+                if (probe.test(candidate.getKey(), candidate.getValue()))
+                {
+                    next = candidate;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<Long, String> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Long, String> result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    /**
+     * Merge iterators sorted by row id, a row id found by several of them is returned once
+     */
+    private static final class MergingIterator implements Iterator<Map.Entry<Long, String>>
+    {
+        private final PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparingLong(head -> head.entry.getKey()));
+        private long lastRowId = Long.MIN_VALUE;
+
+        private static final class Head
+        {
+            private final Iterator<Map.Entry<Long, String>> iterator;
+            private Map.Entry<Long, String> entry;
+
+            private Head(Iterator<Map.Entry<Long, String>> iterator)
+            {
+                this.iterator = iterator;
+            }
+        }
+
+        private MergingIterator(List<Iterator<Map.Entry<Long, String>>> iterators)
+        {
+            for (Iterator<Map.Entry<Long, String>> iterator : iterators)
+            {
+                advance(new Head(iterator));
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (!heads.isEmpty() && heads.peek().entry.getKey() <= lastRowId)
+            {
+                advance(heads.poll());
+            }
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<Long, String> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            Map.Entry<Long, String> result = head.entry;
+            lastRowId = result.getKey();
+            advance(head);
+            return result;
+        }
+
+        private void advance(Head head)
+        {
+            if (head.iterator.hasNext())
+            {
+                head.entry = head.iterator.next();
+                heads.add(head);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.services;
+
+import com.example.metrics.LatencyHistogram;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks, a key is always guarded by the same lock
+ * Writes on keys hashing to different stripes can proceed in parallel
+ * The time spent waiting for a lock and holding it is recorded, for all stripes together
+ */
+class StripedLock
+{
+    private final TimedLock[] locks;
+    private final int mask;
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+    private final LatencyHistogram holdTimes = new LatencyHistogram();
+
+    /**
+     * A lock recording its wait and hold times, a reentrant acquisition is part of the outer one
+     * Only {@link #lock()} is timed, it is the only way the stripes are acquired
+     */
+    private final class TimedLock extends ReentrantLock
+    {
+        //
+        // Only written and read by the owner of the lock
+        //
+        private long acquiredAt;
+
+        @Override
+        public void lock()
+        {
+            if (tryLock())
+            {
+                if (getHoldCount() == 1)
+                {
+                    acquiredAt = System.nanoTime();
+                    waitTimes.record(0);
+                }
+                return;
+            }
+
+            long start = System.nanoTime();
+            super.lock();
+            acquiredAt = System.nanoTime();
+            waitTimes.record(acquiredAt - start);
+        }
+
+        @Override
+        public void unlock()
+        {
+            if (getHoldCount() == 1)
+            {
+                holdTimes.record(System.nanoTime() - acquiredAt);
+            }
+            super.unlock();
+        }
+    }
+
+    /**
+     * @param minimumStripes the minimum number of stripes, rounded up to a power of two
+     */
+    StripedLock(int minimumStripes)
+    {
+        int stripes = 1;
+        while (stripes < minimumStripes)
+        {
+            stripes <<= 1;
+        }
+
+        locks = new TimedLock[stripes];
+        for (int i = 0; i < stripes; i++)
+        {
+            locks[i] = new TimedLock();
+        }
+        mask = stripes - 1;
+    }
+
+    /**
+     * Get the lock guarding the given key
+     * @param key the key to guard
+     * @return the lock of the stripe the key belongs to
+     */
+    ReentrantLock get(String key)
+    {
+        return locks[stripeOf(key)];
+    }
+
+    /**
+     * @param key the key to guard
+     * @return the index of the stripe the key belongs to
+     */
+    int stripeOf(String key)
+    {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Lock the given stripes, in ascending order like {@link #lockAll()}
+     * @param stripes the sorted indexes of the stripes, without duplicates
+     */
+    void lockStripes(int[] stripes)
+    {
+        for (int stripe : stripes)
+        {
+            locks[stripe].lock();
+        }
+    }
+
+    void unlockStripes(int[] stripes)
+    {
+        for (int i = stripes.length - 1; i >= 0; i--)
+        {
+            locks[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * Lock all the stripes, always in the same order
+     * Once this returns, no write holding a single stripe is in progress
+     */
+    void lockAll()
+    {
+        for (TimedLock lock : locks)
+        {
+            lock.lock();
+        }
+    }
+
+    void unlockAll()
+    {
+        for (int i = locks.length - 1; i >= 0; i--)
+        {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * @return the time spent waiting for a stripe, from the call to lock until it is acquired
+     */
+    LatencyHistogram getWaitTimes()
+    {
+        return waitTimes;
+    }
+
+    /**
+     * @return the time a stripe is held, from its acquisition until it is released
+     */
+    LatencyHistogram getHoldTimes()
+    {
+        return holdTimes;
+    }
+}
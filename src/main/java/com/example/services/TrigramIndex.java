@@ -0,0 +1,242 @@
+package com.example.services;
+
+import com.example.entities.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the trigrams of the nicknames, to find the nicknames close to a misspelled one
+ *
+ * A nickname is padded with two leading and one trailing marks, so that "john" gives
+ * "##j", "#jo", "joh", "ohn" and "hn#". An edit removes at most three trigrams, so a nickname
+ * within d edits of the query shares at least (trigrams of the query - 3d) of its trigrams,
+ * and it must hold one of the (3d + 1) rarest of them. Only the nicknames of these rare trigrams
+ * holding enough trigrams of the query are compared to it, with an edit distance that gives up
+ * as soon as it exceeds d.
+ * When the query is too short for that bound, the candidates are the nicknames sharing any trigram.
+ * The index is thread safe, but updates of a given nickname must be serialized by the caller
+ */
+class TrigramIndex
+{
+    private static final char MARK = '#';
+
+    /**
+     * A nickname close to the query
+     */
+    static final class Match
+    {
+        private final String nickname;
+        private final int distance;
+
+        private Match(String nickname, int distance)
+        {
+            this.nickname = nickname;
+            this.distance = distance;
+        }
+
+        String getNickname()
+        {
+            return nickname;
+        }
+
+        int getDistance()
+        {
+            return distance;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Set<String>> nicknamesByTrigram = new ConcurrentHashMap<>();
+
+    void add(String nickname)
+    {
+        for (String trigram : trigrams(nickname))
+        {
+            nicknamesByTrigram.compute(trigram, (key, nicknames) ->
+            {
+                Set<String> result = nicknames == null ? ConcurrentHashMap.newKeySet() : nicknames;
+                result.add(nickname);
+                return result;
+            });
+        }
+    }
+
+    void remove(String nickname)
+    {
+        for (String trigram : trigrams(nickname))
+        {
+            nicknamesByTrigram.computeIfPresent(trigram, (key, nicknames) ->
+            {
+                nicknames.remove(nickname);
+                return nicknames.isEmpty() ? null : nicknames;
+            });
+        }
+    }
+
+    /**
+     * Index the nicknames of many new users
+     * The nicknames are grouped by trigram first, so each trigram is looked up once
+     * and its set is sized for all its new nicknames at once
+     * @param users the new users
+     */
+    void addAll(List<List<User>> users)
+    {
+        Map<String, List<String>> nicknamesToAdd = new HashMap<>();
+        for (List<User> block : users)
+        {
+            for (User user : block)
+            {
+                String nickname = user.getNickname();
+                for (String trigram : trigrams(nickname))
+                {
+                    nicknamesToAdd.computeIfAbsent(trigram, key -> new ArrayList<>()).add(nickname);
+                }
+            }
+        }
+        nicknamesToAdd.entrySet().parallelStream().forEach(entry -> nicknamesByTrigram
+                .computeIfAbsent(entry.getKey(), key -> ConcurrentHashMap.newKeySet(entry.getValue().size()))
+                .addAll(entry.getValue()));
+    }
+
+    /**
+     * @return the number of distinct trigrams indexed
+     */
+    int size()
+    {
+        return nicknamesByTrigram.size();
+    }
+
+    /**
+     * Find the nicknames closest to the given one
+     * @param query the lowercased nickname to look for
+     * @param maxDistance the maximum number of edits (insertion, deletion or substitution of a character)
+     * @param limit the maximum number of nicknames to return
+     * @param deadlineNanos the {@link System#nanoTime()} after which the nicknames compared so far are returned
+     * @return the nicknames by distance, then in alphabetical order
+     */
+    List<Match> find(String query, int maxDistance, int limit, long deadlineNanos)
+    {
+        List<Set<String>> postings = new ArrayList<>();
+        for (String trigram : trigrams(query))
+        {
+            Set<String> nicknames = nicknamesByTrigram.get(trigram);
+            postings.add(nicknames == null ? Collections.emptySet() : nicknames);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        int required = Math.max(1, postings.size() - 3 * maxDistance);
+        int candidatePostings = postings.size() - required + 1;
+
+        List<Match> matches = new ArrayList<>();
+        Set<String> compared = new HashSet<>();
+        int[][] rows = new int[2][query.length() + 1];
+        for (int i = 0; i < candidatePostings; i++)
+        {
+            for (String nickname : postings.get(i))
+            {
+                if (!compared.add(nickname) || !sharesEnough(nickname, postings, i, required))
+                {
+                    continue;
+                }
+
+                int distance = distance(query, nickname, maxDistance, rows);
+                if (distance <= maxDistance)
+                {
+                    matches.add(new Match(nickname, distance));
+                }
+                if ((compared.size() & 0xff) == 0 && System.nanoTime() - deadlineNanos > 0)
+                {
+                    return best(matches, limit);
+                }
+            }
+        }
+        return best(matches, limit);
+    }
+
+    /**
+     * @return whether the nickname, found in the posting at the given index, is in enough postings
+     */
+    private static boolean sharesEnough(String nickname, List<Set<String>> postings, int index, int required)
+    {
+        int shared = 1;
+        int missing = index;
+        for (int i = index + 1; i < postings.size() && shared < required; i++)
+        {
+            if (postings.get(i).contains(nickname))
+            {
+                shared++;
+            }
+            else if (++missing > postings.size() - required)
+            {
+                return false;
+            }
+        }
+        return shared >= required;
+    }
+
+    private static List<Match> best(List<Match> matches, int limit)
+    {
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparing(Match::getNickname));
+        return matches.size() <= limit ? matches : new ArrayList<>(matches.subList(0, limit));
+    }
+
+    /**
+     * The Levenshtein distance, computed one row at a time, which stops once every cell of a row exceeds the maximum
+     * @return the distance, or maxDistance + 1 if it is larger than maxDistance
+     */
+    static int distance(String query, String nickname, int maxDistance, int[][] rows)
+    {
+        if (Math.abs(query.length() - nickname.length()) > maxDistance)
+        {
+            return maxDistance + 1;
+        }
+
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= query.length(); j++)
+        {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= nickname.length(); i++)
+        {
+            current[0] = i;
+            int rowMinimum = i;
+            char c = nickname.charAt(i - 1);
+            for (int j = 1; j <= query.length(); j++)
+            {
+                int substitution = previous[j - 1] + (query.charAt(j - 1) == c ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxDistance)
+            {
+                return maxDistance + 1;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[query.length()], maxDistance + 1);
+    }
+
+    private static Set<String> trigrams(String nickname)
+    {
+        String padded = "" + MARK + MARK + nickname + MARK;
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++)
+        {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
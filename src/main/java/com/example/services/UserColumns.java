@@ -0,0 +1,247 @@
+package com.example.services;
+
+import com.example.entities.Criteria;
+import com.example.entities.User;
+import com.example.services.UserQuery.Condition;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The filterable fields of the users, stored by column rather than by user
+ *
+ * Each user gets a slot, the fields of a slot are in parallel arrays cut in chunks, so that
+ * growing the store never copies the users already stored. The names are the strings of the
+ * {@link User} itself, only a reference is stored, and the country is stored as an int code
+ * of a dictionary, there are only a few of them. The slot of a deleted user is given to the
+ * next user.
+ * The {@link QueryPlanner} checks the candidates of an index against the other conditions of a query
+ * with a {@link Probe}, which reads the columns rather than the users, so the users that do not match
+ * are never read from the repository.
+ * The columns are read without lock, so a probe only gives candidates that must be checked
+ * against the users. Updates of a given user must be serialized by the caller.
+ */
+final class UserColumns
+{
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The columns of CHUNK_SIZE consecutive slots
+     */
+    private static final class Chunk
+    {
+        private final long[] rowIds = new long[CHUNK_SIZE];
+        private final String[] emails = new String[CHUNK_SIZE];
+        private final String[] firstnames = new String[CHUNK_SIZE];
+        private final String[] lastnames = new String[CHUNK_SIZE];
+        private final String[] nicknames = new String[CHUNK_SIZE];
+        private final int[] countries = new int[CHUNK_SIZE];
+    }
+
+    private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> countryCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nextCountryCode = new AtomicInteger();
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    //
+    // Guarded by this
+    //
+    private int usedSlots;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    /**
+     * Store a new user
+     * @param user the user to store
+     * @param rowId the row id of the user
+     */
+    void add(User user, long rowId)
+    {
+        int slot = allocate();
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int index = slot & CHUNK_MASK;
+        chunk.rowIds[index] = rowId;
+        chunk.emails[index] = user.getEmail();
+        write(chunk, index, user);
+        slots.put(user.getEmail(), slot);
+    }
+
+    /**
+     * Store the new fields of a user
+     * @param user the new version of a stored user
+     */
+    void update(User user)
+    {
+        int slot = slots.get(user.getEmail());
+        write(chunks[slot >>> CHUNK_BITS], slot & CHUNK_MASK, user);
+    }
+
+    /**
+     * Remove a user
+     * @param email the email of a stored user
+     * @return the row id of the user
+     */
+    long remove(String email)
+    {
+        int slot = slots.remove(email);
+        Chunk chunk = chunks[slot >>> CHUNK_BITS];
+        int index = slot & CHUNK_MASK;
+        long rowId = chunk.rowIds[index];
+        chunk.emails[index] = null;
+        chunk.firstnames[index] = null;
+        chunk.lastnames[index] = null;
+        chunk.nicknames[index] = null;
+        release(slot);
+        return rowId;
+    }
+
+    /**
+     * @param email the email of a stored user
+     * @return the row id of the user
+     */
+    long rowId(String email)
+    {
+        int slot = slots.get(email);
+        return chunks[slot >>> CHUNK_BITS].rowIds[slot & CHUNK_MASK];
+    }
+
+    /**
+     * @return the number of users stored
+     */
+    int size()
+    {
+        return slots.size();
+    }
+
+    /**
+     * @param conditions the conditions the users must match, all of them
+     * @return the probe checking the conditions against the columns
+     */
+    Probe probe(List<Condition> conditions)
+    {
+        return new Probe(conditions);
+    }
+
+    /**
+     * The conditions of a query, checked against the columns of a user, the country by its code
+     */
+    final class Probe
+    {
+        private final Criteria[] criteria;
+        private final String[] values;
+        private final int[] countries;
+
+        private Probe(List<Condition> conditions)
+        {
+            criteria = new Criteria[conditions.size()];
+            values = new String[conditions.size()];
+            countries = new int[conditions.size()];
+            for (int i = 0; i < conditions.size(); i++)
+            {
+                criteria[i] = conditions.get(i).getCriteria();
+                values[i] = conditions.get(i).getValue();
+
+                //
+                // A country without a code is held by no user
+                //
+                Integer code = countryCodes.get(values[i]);
+                countries[i] = code == null ? -1 : code;
+            }
+        }
+
+        /**
+         * @param rowId the row id of the candidate user
+         * @param email the email of the candidate user
+         * @return whether the user is still stored under this row id and matches all the conditions
+         */
+        boolean test(long rowId, String email)
+        {
+            Integer slot = slots.get(email);
+            if (slot == null)
+            {
+                return false;
+            }
+            Chunk chunk = chunks[slot >>> CHUNK_BITS];
+            int index = slot & CHUNK_MASK;
+            if (chunk.rowIds[index] != rowId)
+            {
+                return false;
+            }
+            for (int i = 0; i < criteria.length; i++)
+            {
+                String[] column = column(chunk, criteria[i]);
+                boolean matches = column == null ? chunk.countries[index] == countries[i] : values[i].equals(column[index]);
+                if (!matches)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder description = new StringBuilder();
+            for (int i = 0; i < criteria.length; i++)
+            {
+                description.append(i == 0 ? "" : " AND ").append(criteria[i].getCriteriaName()).append('=').append(values[i]);
+            }
+            return description.toString();
+        }
+    }
+
+    private static String[] column(Chunk chunk, Criteria criteria)
+    {
+        switch (criteria)
+        {
+            case FIRSTNAME:
+                return chunk.firstnames;
+            case LASTNAME:
+                return chunk.lastnames;
+            case NICKNAME:
+                return chunk.nicknames;
+            default:
+                return null;
+        }
+    }
+
+    private void write(Chunk chunk, int index, User user)
+    {
+        chunk.firstnames[index] = user.getFirstname();
+        chunk.lastnames[index] = user.getLastname();
+        chunk.nicknames[index] = user.getNickname();
+        chunk.countries[index] = countryCodes.computeIfAbsent(user.getCountry(),
+                country -> nextCountryCode.getAndIncrement());
+    }
+
+    private synchronized int allocate()
+    {
+        if (freeSlotCount > 0)
+        {
+            return freeSlots[--freeSlotCount];
+        }
+
+        int slot = usedSlots++;
+        if ((slot >>> CHUNK_BITS) == chunks.length)
+        {
+            Chunk[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = new Chunk();
+            chunks = grown;
+        }
+        return slot;
+    }
+
+    private synchronized void release(int slot)
+    {
+        if (freeSlotCount == freeSlots.length)
+        {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.services;
+
+import com.example.controllers.UserController;
+import com.example.entities.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parse a file of users with several threads, as CSV or as newline delimited JSON
+ * depending on the extension of the file (.csv, or .ndjson / .jsonl / .json)
+ *
+ * The file is split in ranges ending on a line break, and each range is read and parsed
+ * by its own thread. A CSV file starts with a header naming its columns, which must include
+ * firstname, lastname, nickname, email, password and country. Its fields may be quoted, but
+ * a field cannot hold a line break.
+ */
+final class UserFileParser
+{
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final String[] COLUMNS = {"firstname", "lastname", "nickname", "email", "password", "country"};
+
+    private static final ObjectReader USER_READER = new ObjectMapper().findAndRegisterModules().readerFor(User.class);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean csv;
+    private int[] columns;
+    private int columnCount;
+
+    private UserFileParser(Path file, FileChannel channel)
+    {
+        this.file = file;
+        this.channel = channel;
+        this.csv = file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    /**
+     * Parse all the users of a file
+     * @param file the file to parse
+     * @param threads the number of threads parsing the file
+     * @return the users, by ranges of the file, in the order of the file
+     * or throw a {@link IllegalArgumentException} if a line is not a valid user
+     */
+    static List<List<User>> parse(Path file, int threads) throws IOException
+    {
+        String extension = file.getFileName().toString().toLowerCase();
+        if (!extension.endsWith(".csv") && !extension.endsWith(".ndjson") && !extension.endsWith(".jsonl")
+                && !extension.endsWith(".json"))
+        {
+            throw new IllegalArgumentException("The file [" + file + "] must be a .csv or a .ndjson file");
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            return new UserFileParser(file, channel).parse(threads);
+        }
+    }
+
+    private List<List<User>> parse(int threads) throws IOException
+    {
+        long start = 0;
+        if (csv)
+        {
+            LineReader header = new LineReader(0, channel.size());
+            readHeader(header.next());
+            start = header.offset();
+        }
+
+        List<Long> boundaries = split(start, threads * RANGES_PER_THREAD);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "user-import-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            List<Future<List<User>>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.size(); i++)
+            {
+                LineReader range = new LineReader(boundaries.get(i), boundaries.get(i + 1));
+                futures.add(executor.submit(() -> parseRange(range)));
+            }
+
+            List<List<User>> users = new ArrayList<>(futures.size());
+            for (Future<List<User>> future : futures)
+            {
+                users.add(future.get());
+            }
+            return users;
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The import of [" + file + "] has been interrupted", exception);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("The file [" + file + "] cannot be read", cause);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the file in ranges of about the same size, each one starting at the beginning of a line
+     * @return the offsets of the ranges, followed by the size of the file
+     */
+    private List<Long> split(long start, int ranges) throws IOException
+    {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>(ranges + 1);
+        boundaries.add(start);
+        for (int i = 1; i < ranges; i++)
+        {
+            long boundary = nextLine(start + (size - start) * i / ranges);
+            if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size)
+            {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    /**
+     * @return the offset following the first line break at or after the given offset
+     */
+    private long nextLine(long offset) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = offset - 1;
+        while (true)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0)
+            {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++)
+            {
+                if (buffer.get(i) == '\n')
+                {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private List<User> parseRange(LineReader range)
+    {
+        try
+        {
+            List<User> users = new ArrayList<>();
+            String line;
+            while ((line = range.next()) != null)
+            {
+                if (!line.trim().isEmpty())
+                {
+                    users.add(parseUser(line, range.lineOffset()));
+                }
+            }
+            return users;
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException("The file [" + file + "] cannot be read", exception);
+        }
+    }
+
+    private User parseUser(String line, long offset)
+    {
+        User user;
+        if (csv)
+        {
+            List<String> fields = splitCsv(line, offset);
+            if (fields.size() != columnCount)
+            {
+                throw invalidLine(offset, "it has " + fields.size() + " fields instead of " + columnCount);
+            }
+            user = new User(fields.get(columns[0]), fields.get(columns[1]), fields.get(columns[2]),
+                    fields.get(columns[3]), fields.get(columns[4]), fields.get(columns[5]));
+        }
+        else
+        {
+            try
+            {
+                user = USER_READER.readValue(line);
+            }
+            catch (IOException exception)
+            {
+                throw invalidLine(offset, "it is not a complete user");
+            }
+        }
+
+        //
+        // The same rules as the creation of a single user
+        //
+        String[] values = {user.getFirstname(), user.getLastname(), user.getNickname(),
+                user.getEmail(), user.getPassword(), user.getCountry()};
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] == null || values[i].isEmpty())
+            {
+                throw invalidLine(offset, "the " + COLUMNS[i] + " is missing");
+            }
+        }
+        if (!UserController.VALID_EMAIL_ADDRESS_REGEX.matcher(user.getEmail()).find())
+        {
+            throw invalidLine(offset, "the email address [" + user.getEmail() + "] is not correct");
+        }
+        return user;
+    }
+
+    private void readHeader(String header)
+    {
+        if (header == null)
+        {
+            throw new IllegalArgumentException("The file [" + file + "] is empty, it must start with a header");
+        }
+
+        List<String> names = splitCsv(header, 0);
+        columnCount = names.size();
+        columns = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++)
+        {
+            columns[i] = -1;
+            for (int j = 0; j < names.size(); j++)
+            {
+                if (names.get(j).trim().equalsIgnoreCase(COLUMNS[i]))
+                {
+                    columns[i] = j;
+                }
+            }
+            if (columns[i] < 0)
+            {
+                throw new IllegalArgumentException("The header of [" + file + "] has no " + COLUMNS[i] + " column");
+            }
+        }
+    }
+
+    private List<String> splitCsv(String line, long offset)
+    {
+        List<String> fields = new ArrayList<>(COLUMNS.length);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (quoted)
+            {
+                if (c != '"')
+                {
+                    field.append(c);
+                }
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append('"');
+                    i++;
+                }
+                else
+                {
+                    quoted = false;
+                }
+            }
+            else if (c == '"')
+            {
+                quoted = true;
+            }
+            else if (c == ',')
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+        if (quoted)
+        {
+            throw invalidLine(offset, "a quote is not closed");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private IllegalArgumentException invalidLine(long offset, String reason)
+    {
+        return new IllegalArgumentException("The line at byte [" + offset + "] of [" + file + "] is not valid, " + reason);
+    }
+
+    /**
+     * Read the lines of a range of the file, with positional reads so that the ranges can be read concurrently
+     */
+    private final class LineReader
+    {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final long end;
+        private long position;
+        private int index;
+        private int limit;
+        private long lineOffset;
+        private byte[] line = new byte[256];
+
+        private LineReader(long start, long end)
+        {
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * @return the next line, without its line break, or null at the end of the range
+         */
+        String next() throws IOException
+        {
+            lineOffset = offset();
+            int length = 0;
+            while (true)
+            {
+                if (index == limit && !fill())
+                {
+                    return length == 0 ? null : decode(length);
+                }
+
+                int lineEnd = index;
+                while (lineEnd < limit && buffer[lineEnd] != '\n')
+                {
+                    lineEnd++;
+                }
+
+                int chunk = lineEnd - index;
+                if (length + chunk > line.length)
+                {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + chunk));
+                }
+                System.arraycopy(buffer, index, line, length, chunk);
+                length += chunk;
+                index = lineEnd;
+
+                if (lineEnd < limit)
+                {
+                    index++;
+                    return decode(length);
+                }
+            }
+        }
+
+        /**
+         * @return the offset of the next line to read
+         */
+        long offset()
+        {
+            return position - (limit - index);
+        }
+
+        long lineOffset()
+        {
+            return lineOffset;
+        }
+
+        private boolean fill() throws IOException
+        {
+            if (position >= end)
+            {
+                return false;
+            }
+            ByteBuffer target = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+            int read = channel.read(target, position);
+            if (read <= 0)
+            {
+                return false;
+            }
+            position += read;
+            index = 0;
+            limit = read;
+            return true;
+        }
+
+        private String decode(int length)
+        {
+            if (length > 0 && line[length - 1] == '\r')
+            {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
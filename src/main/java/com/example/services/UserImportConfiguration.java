@@ -0,0 +1,27 @@
+package com.example.services;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * Import a file of users at startup when it is given in the application properties,
+ * or on the command line, e.g. --user.import.path=users.csv
+ * The import is done while the beans are created, so before the server accepts requests
+ *
+ * user.import.path = the CSV or newline delimited JSON file to import, see {@link UserServices#importUsers}
+ */
+@Configuration
+@ConditionalOnProperty(name = "user.import.path")
+public class UserImportConfiguration
+{
+    @Bean
+    public InitializingBean userImport(UserServices userServices, @Value("${user.import.path}") String path)
+    {
+        return () -> userServices.importUsers(Paths.get(path));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.services;
+
+import com.example.entities.Criteria;
+import com.example.entities.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A query on the criteria of the users, as groups of conditions joined by AND, the groups being joined by OR
+ * e.g. country=france AND lastname=henry OR nickname=king henry
+ * AND binds tighter than OR, and there are no parentheses, both are read whatever their case
+ * A value holding the words and or or is quoted, e.g. nickname="rock or roll"
+ */
+final class UserQuery
+{
+    static final int MAX_CONDITIONS = 16;
+
+    //
+    // A word of the query, the quoted parts of a word may hold spaces
+    //
+    private static final Pattern WORD = Pattern.compile("(?:[^\\s\"]+|\"[^\"]*\")+");
+
+    /**
+     * A single condition, the value of a criteria must be equal to the given one
+     */
+    static final class Condition
+    {
+        private final Criteria criteria;
+        private final String value;
+
+        Condition(Criteria criteria, String value)
+        {
+            this.criteria = criteria;
+            this.value = value;
+        }
+
+        Criteria getCriteria()
+        {
+            return criteria;
+        }
+
+        String getValue()
+        {
+            return value;
+        }
+
+        boolean matches(User user)
+        {
+            return value.equals(criteria.extractValue(user));
+        }
+
+        @Override
+        public String toString()
+        {
+            return criteria.getCriteriaName() + "=" + value;
+        }
+    }
+
+    private final List<List<Condition>> groups;
+
+    private UserQuery(List<List<Condition>> groups)
+    {
+        this.groups = groups;
+    }
+
+    /**
+     * @param query the query, e.g. country=france AND lastname=henry
+     * @return the query parsed, the values being lowercased like the fields of the users
+     * or throw a {@link IllegalArgumentException} if the query is not valid
+     */
+    static UserQuery parse(String query)
+    {
+        if (query == null || query.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("The query must be given, e.g. country=france AND lastname=henry");
+        }
+
+        if (query.chars().filter(c -> c == '"').count() % 2 != 0)
+        {
+            throw new IllegalArgumentException("The query [" + query + "] has a quote which is not closed");
+        }
+
+        List<List<Condition>> groups = new ArrayList<>();
+        List<Condition> conditions = new ArrayList<>();
+        int count = 0;
+        int start = -1;
+        int end = -1;
+        Matcher words = WORD.matcher(query);
+        while (true)
+        {
+            boolean found = words.find();
+            String word = found ? words.group() : null;
+            boolean and = "AND".equalsIgnoreCase(word);
+            boolean or = "OR".equalsIgnoreCase(word);
+            if (found && !and && !or)
+            {
+                start = start < 0 ? words.start() : start;
+                end = words.end();
+                continue;
+            }
+
+            //
+            // The end of a condition, and of its group unless it is followed by AND
+            //
+            if (start < 0)
+            {
+                throw new IllegalArgumentException("The query [" + query + "] has an empty condition");
+            }
+            conditions.add(parseCondition(query.substring(start, end)));
+            count++;
+            start = -1;
+            if (!and)
+            {
+                groups.add(Collections.unmodifiableList(conditions));
+                conditions = new ArrayList<>();
+            }
+            if (!found)
+            {
+                break;
+            }
+        }
+
+        if (count > MAX_CONDITIONS)
+        {
+            throw new IllegalArgumentException("The query has " + count + " conditions, at most "
+                    + MAX_CONDITIONS + " are allowed");
+        }
+        return new UserQuery(Collections.unmodifiableList(groups));
+    }
+
+    private static Condition parseCondition(String condition)
+    {
+        int equals = condition.indexOf('=');
+        if (equals < 0)
+        {
+            throw new IllegalArgumentException("The condition [" + condition + "] must be written criteria=value");
+        }
+
+        String name = condition.substring(0, equals).trim().toLowerCase();
+        String value = condition.substring(equals + 1).trim().toLowerCase();
+        Criteria criteria = Criteria.fromString(name);
+        if (criteria.equals(Criteria.UNDEFINED))
+        {
+            throw new IllegalArgumentException("The given criteria [" + name + "] does not correspond " +
+                    "to any possible filter");
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+        {
+            value = value.substring(1, value.length() - 1);
+        }
+        else if (value.indexOf('"') >= 0)
+        {
+            throw new IllegalArgumentException("The value [" + value + "] must be quoted as a whole");
+        }
+        if (value.isEmpty())
+        {
+            throw new IllegalArgumentException("The given criteria [" + name + "] must be given with a value");
+        }
+        return new Condition(criteria, value);
+    }
+
+    /**
+     * @return the groups of conditions joined by AND, the groups being joined by OR
+     */
+    List<List<Condition>> getGroups()
+    {
+        return groups;
+    }
+
+    /**
+     * @param user the user to check
+     * @return whether the user matches all the conditions of at least one group
+     */
+    boolean matches(User user)
+    {
+        for (List<Condition> group : groups)
+        {
+            if (group.stream().allMatch(condition -> condition.matches(user)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
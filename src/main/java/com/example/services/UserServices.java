@@ -1,84 +1,217 @@
 package com.example.services;
 
 import com.example.controllers.UserController;
+import com.example.entities.BulkOperation;
+import com.example.entities.Criteria;
+import com.example.entities.FacetCount;
+import com.example.entities.NicknameMatch;
+import com.example.entities.StringPools;
 import com.example.entities.User;
+import com.example.entities.UserPage;
 import com.example.exceptions.ConflictException;
 import com.example.exceptions.NotFoundException;
 import com.example.exceptions.UnauthorizedException;
+import com.example.metrics.LatencyHistogram;
 import com.example.messaging.BusMessage;
 import com.example.messaging.MyFakeMessageBus;
+import com.example.messaging.SleepingWaitStrategy;
+import com.example.persistence.MutationHandler;
+import com.example.persistence.SnapshotManager;
+import com.example.persistence.WriteAheadLog;
+import com.example.repositories.InMemoryUserRepository;
+import com.example.repositories.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 
 /**
  * This service is used to make CRUD operation on users
  * It also holds a user cache
+ *
+ * Reads never lock, writes only lock the stripe of the email they touch,
+ * so that writes on different users can proceed in parallel.
+ * The nickname uniqueness across stripes is guaranteed by the atomic
+ * operations of the nickname index.
  */
 @Service
 public class UserServices
 {
-    private final Map<String, Map<String, Object>> userFilterableRepository = new HashMap<>();
-    private final Map<String, User> userRepository = new HashMap<>();
+    private final UserRepository userRepository;
+    private final WriteAheadLog writeAheadLog;
+    private final SnapshotManager snapshotManager;
+    private final MyFakeMessageBus messageBus;
+    private final StringPools stringPools;
+    private long lastSnapshotSequence;
+    private final ConcurrentHashMap<String, String> nicknameIndex = new ConcurrentHashMap<>();
+    private final CriteriaIndex criteriaIndex = new CriteriaIndex();
+    private final PrefixIndex prefixIndex = new PrefixIndex();
+    private final TrigramIndex trigramIndex = new TrigramIndex();
 
-    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    //
+    // Each user gets a row id when it is created, the users are listed in the order
+    // of their row ids so that a page never moves when users are created or deleted
+    // The row id and the filterable fields of each user are held by the columns,
+    // which the queries read rather than the users
+    //
+    private final AtomicLong nextRowId = new AtomicLong();
+    private final UserColumns columns = new UserColumns();
+    private final ConcurrentSkipListMap<Long, String> rows = new ConcurrentSkipListMap<>();
+
+    private final QueryPlanner queryPlanner = new QueryPlanner(criteriaIndex, columns, rows);
+
+    /**
+     * The number of operations of a bulk applied under the same locks
+     */
+    public static final int BULK_CHUNK_SIZE = 1024;
+    private static final UnauthorizedException INVALID_PASSWORD =
+            new UnauthorizedException("The password is invalid. The user can't be updated");
+    private static final long FUZZY_SEARCH_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final StripedLock locks = new StripedLock(Runtime.getRuntime().availableProcessors() * 4);
 
     Logger logger = LoggerFactory.getLogger(UserController.class);
 
+    public UserServices()
+    {
+        this(new InMemoryUserRepository(), Optional.empty(), Optional.empty());
+    }
 
     /**
-     * Create a user and persist it in a cache
-     * @param user the user to create
-     * @return the user created
-     * or throw a {@link IllegalArgumentException} if a user
-     * with a same email has already been created
+     * Create a service publishing its events on a bus of its own, and pooling the values of the default fields,
+     * give the bus to the other constructor to subscribe to them
      */
-    public User createUser(User user)
+    public UserServices(UserRepository userRepository, Optional<WriteAheadLog> writeAheadLog,
+                        Optional<SnapshotManager> snapshotManager)
     {
-        try
+        this(userRepository, writeAheadLog, snapshotManager,
+                new MyFakeMessageBus(MyFakeMessageBus.DEFAULT_CAPACITY, new SleepingWaitStrategy()), new StringPools());
+    }
+
+    /**
+     * Index the users already held by the repository, then load the last snapshot
+     * and replay the write-ahead log following it, if any
+     * @param userRepository the storage of the users
+     * @param writeAheadLog the log of the mutations, if they must survive a restart
+     * @param snapshotManager the snapshots of the users, if the log must not be replayed from its start
+     * @param messageBus the bus notified of the mutations
+     * @param stringPools the pools of the values of the users stored
+     */
+    @Autowired
+    public UserServices(UserRepository userRepository, Optional<WriteAheadLog> writeAheadLog,
+                        Optional<SnapshotManager> snapshotManager, MyFakeMessageBus messageBus,
+                        StringPools stringPools)
+    {
+        this.userRepository = userRepository;
+        this.messageBus = messageBus;
+        this.stringPools = stringPools;
+        this.writeAheadLog = writeAheadLog.orElse(null);
+        this.snapshotManager = snapshotManager.orElse(null);
+
+        for (User user : userRepository)
         {
-            readWriteLock.writeLock().lock();
+            index(null, stringPools.intern(user));
+        }
 
-            String email = user.getEmail();
-            String nickname = user.getNickname();
+        if (this.snapshotManager != null && this.writeAheadLog == null)
+        {
+            throw new IllegalStateException("The snapshots require the write-ahead log to be enabled");
+        }
 
-            if (userRepository.containsKey(email))
+        MutationHandler recoveryHandler = new MutationHandler()
+        {
+            @Override
+            public void onPut(User user)
             {
-                logger.warn("Conflict : The user cannot be created as there is an existing user with the given id ");
-                throw new ConflictException("A user with email ["+email+"] has already been created");
+                User stored = stringPools.intern(user);
+                index(userRepository.put(stored.getEmail(), stored), stored);
             }
 
-            if (!validateNickname(nickname))
+            @Override
+            public void onPutAll(List<List<User>> users)
             {
-                logger.warn("Conflict : The user cannot be created as there is an existing user with the given nickname ");
-                throw new ConflictException("A user with nickname ["+nickname+"] has already been created");
+                //
+                // The users of a snapshot loaded first are stored and indexed like an import
+                //
+                if (rows.isEmpty())
+                {
+                    storeAll(users);
+                }
+                else
+                {
+                    MutationHandler.super.onPutAll(users);
+                }
             }
 
-            //
-            // Save the user in the user cache and filterable cache
-            //
-            userRepository.put(email, user);
-            userFilterableRepository.put(email, user.toMap());
+            @Override
+            public void onDelete(String email)
+            {
+                User user = userRepository.remove(email);
+                if (user != null)
+                {
+                    unindex(user);
+                }
+            }
+        };
 
-            //
-            // Notify the creation of a new user
-            //
-            BusMessage message = new BusMessage(BusMessage.USER_ADD, user);
-            MyFakeMessageBus.getInstance().send(message);
+        if (this.snapshotManager != null)
+        {
+            lastSnapshotSequence = this.snapshotManager.load(recoveryHandler);
+        }
+        if (this.writeAheadLog != null)
+        {
+            this.writeAheadLog.recover(lastSnapshotSequence, recoveryHandler);
+        }
+        if (this.snapshotManager != null)
+        {
+            this.snapshotManager.schedule(this::takeSnapshot);
+        }
+    }
 
-            return user;
+    /**
+     * Create a user and persist it in a cache
+     * @param user the user to create
+     * @return the user created
+     * or throw a {@link IllegalArgumentException} if a user
+     * with a same email has already been created
+     */
+    public User createUser(User user)
+    {
+        Lock lock = locks.get(user.getEmail());
+        long ticket;
+        lock.lock();
+        try
+        {
+            ticket = messageBus.send(create(user, true));
         }
         finally
         {
-            readWriteLock.writeLock().unlock();
+            lock.unlock();
         }
+        messageBus.awaitSent(ticket);
+        return user;
     }
 
     /**
@@ -89,180 +222,859 @@ public class UserServices
      */
     public User updateUser(User user)
     {
+        Lock lock = locks.get(user.getEmail());
+        long ticket;
+        lock.lock();
         try
         {
-            readWriteLock.writeLock().lock();
+            ticket = messageBus.send(update(user, true));
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        messageBus.awaitSent(ticket);
+        return user;
+    }
 
-            String email = user.getEmail();
-            if (!userRepository.containsKey(email))
-            {
-                logger.warn("Not Found : The user cannot be updated as there is no existing user with the given id ");
-                throw new NotFoundException("A user with email ["+email+"] does not exist." +
-                        " Therefore, the user cannot be updated");
-            }
+    /**
+     * Get all users matching the given criteria
+     * If no criteria is provided, return all users
+     * @param criteria an existing criteria to filter on
+     * @param value the value of the criteria
+     * @return a list of user matching the given criteria, in the order they have been created
+     */
+    public List<User> getAllUsers(String criteria, String value)
+    {
+        return getAllUsers(criteria, value, Integer.MAX_VALUE, null).getUsers();
+    }
+
+    /**
+     * Get a page of the users matching the given criteria
+     * If no criteria is provided, return a page of all users
+     *
+     * The users are listed in the order they have been created, and the cursor is the
+     * last one returned, so that creating or deleting users between two pages never
+     * makes the next page skip or repeat a user. The row ids are given again at startup,
+     * so a cursor does not survive a restart.
+     * @param criteria an existing criteria to filter on
+     * @param value the value of the criteria
+     * @param limit the maximum number of users of the page
+     * @param cursor the next cursor of the previous page, or null for the first page
+     * @return the page of users
+     */
+    public UserPage getAllUsers(String criteria, String value, int limit, String cursor)
+    {
+        long afterRowId = PageCursor.decode(cursor);
+        if (criteria == null)
+        {
+            return page(rows, afterRowId, limit, user -> true);
+        }
 
+        //
+        // Use the secondary index of the criteria if there is one
+        //
+        String lowerCaseValue = value.toLowerCase();
+        Criteria enumCriteria = Criteria.fromString(criteria);
+        NavigableMap<Long, String> emails = criteriaIndex.find(enumCriteria, lowerCaseValue);
+        if (emails == null)
+        {
             //
-            // Let's check if the user has a correct password
+            // Every criteria is indexed, no user holds an unknown one
             //
-            if(!validatePassword(user))
+            return new UserPage(new ArrayList<>(), null);
+        }
+
+        //
+        // The index is read without lock, so the user may have been
+        // updated meanwhile
+        //
+        return page(emails, afterRowId, limit, user -> lowerCaseValue.equals(enumCriteria.extractValue(user)));
+    }
+
+    /**
+     * Get a page of the users matching a query on several criteria
+     * e.g. country=france AND lastname=henry OR nickname=king henry, see {@link UserQuery}
+     *
+     * Each group of conditions joined by AND is read from the index of its most selective
+     * condition, see {@link QueryPlanner}. The users are listed in the order they have been
+     * created, and paged like {@link #getAllUsers(String, String, int, String)}.
+     * @param query the conditions the users must match
+     * @param limit the maximum number of users of the page
+     * @param cursor the next cursor of the previous page, or null for the first page
+     * @return the page of users
+     * or throw a {@link IllegalArgumentException} if the query is not valid
+     */
+    public UserPage queryUsers(String query, int limit, String cursor)
+    {
+        long afterRowId = PageCursor.decode(cursor);
+        UserQuery userQuery = UserQuery.parse(query);
+        List<QueryPlanner.GroupPlan> plans = queryPlanner.plan(userQuery);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("The query [" + query + "] is planned as " + plans);
+        }
+
+        //
+        // The indexes are read without lock, so the users are checked against the whole query
+        //
+        return page(QueryPlanner.rowsAfter(plans, afterRowId), afterRowId, limit, userQuery::matches);
+    }
+
+    /**
+     * Get the first users whose nickname, firstname or lastname starts with the given prefix
+     * The users are read from a sorted index, so the time does not depend on the number of users
+     * @param prefix the beginning of the name, the case does not matter
+     * @param field the name to search, nickname, firstname or lastname, or null to search the three of them
+     * @param limit the maximum number of users to return
+     * @return the users, in the order of their matching name
+     * or throw a {@link IllegalArgumentException} if the field cannot be searched
+     */
+    public List<User> autocomplete(String prefix, String field, int limit)
+    {
+        List<Criteria> fields = PrefixIndex.FIELDS;
+        if (field != null)
+        {
+            Criteria criteria = Criteria.fromString(field);
+            if (!PrefixIndex.FIELDS.contains(criteria))
             {
-                throw new UnauthorizedException("The password is invalid. The user can't be updated");
+                throw new IllegalArgumentException("The field [" + field + "] cannot be searched by prefix, " +
+                        "it must be one of nickname, firstname or lastname");
             }
+            fields = Collections.singletonList(criteria);
+        }
 
+        String lowerCasePrefix = prefix.toLowerCase();
+        List<User> users = new ArrayList<>(limit);
+        for (String email : prefixIndex.find(lowerCasePrefix, fields, limit))
+        {
             //
-            // Save the user in the user cache and filterable cache
+            // The index is read without lock, so the user may have been
+            // updated or deleted meanwhile
             //
-            userRepository.put(email, user);
-            userFilterableRepository.put(email, user.toMap());
+            User user = userRepository.get(email);
+            if (user != null && fields.stream().anyMatch(
+                    criteria -> criteria.extractValue(user).startsWith(lowerCasePrefix)))
+            {
+                users.add(user);
+            }
+        }
+        return users;
+    }
 
+    /**
+     * Get the users whose nickname is the closest to the given one, which may be misspelled
+     * The nicknames are read from a trigram index, see {@link TrigramIndex}, and the search
+     * returns the matches found so far once its time budget is spent
+     * @param nickname the nickname to look for, the case does not matter
+     * @param maxDistance the maximum number of characters inserted, deleted or substituted
+     * @param limit the maximum number of users to return
+     * @return the users, the closest first
+     */
+    public List<NicknameMatch> searchNickname(String nickname, int maxDistance, int limit)
+    {
+        long deadline = System.nanoTime() + FUZZY_SEARCH_BUDGET_NANOS;
+        List<NicknameMatch> matches = new ArrayList<>(limit);
+        for (TrigramIndex.Match match : trigramIndex.find(nickname.toLowerCase(), maxDistance, limit, deadline))
+        {
             //
-            // Notify the creation of a new user
+            // The index is read without lock, so the nickname may have been released meanwhile
             //
-            BusMessage message = new BusMessage(BusMessage.USER_UPDATE, user);
-            MyFakeMessageBus.getInstance().send(message);
+            String email = nicknameIndex.get(match.getNickname());
+            User user = email == null ? null : userRepository.get(email);
+            if (user != null && user.getNickname().equals(match.getNickname()))
+            {
+                matches.add(new NicknameMatch(user, match.getDistance()));
+            }
+        }
+        return matches;
+    }
 
-            return user;
+    /**
+     * Count the users matching the given criteria, from the counters of the index, without reading any user
+     * If no criteria is provided, count all users
+     * @param criteria an existing criteria to filter on
+     * @param value the value of the criteria
+     * @return the number of users matching the criteria
+     * or throw a {@link IllegalArgumentException} if the criteria does not exist
+     */
+    public int countUsers(String criteria, String value)
+    {
+        if (criteria == null)
+        {
+            return columns.size();
         }
-        finally
+        return criteriaIndex.posting(indexedCriteria(criteria), value.toLowerCase()).users();
+    }
+
+    /**
+     * Get the values of a criteria held by the most users, from the counters of the index
+     * @param criteria an existing criteria
+     * @param limit the maximum number of values to return
+     * @return the values and their number of users, the most frequent first
+     * or throw a {@link IllegalArgumentException} if the criteria does not exist
+     */
+    public List<FacetCount> facet(String criteria, int limit)
+    {
+        return criteriaIndex.top(indexedCriteria(criteria), limit);
+    }
+
+    /**
+     * Iterate all users, in the order they have been created, without copying them
+     *
+     * Only the users created before this call are returned. The iteration is not a
+     * point in time copy though : a user deleted meanwhile is skipped, and a user
+     * updated meanwhile may be returned in its new version.
+     * @return the users, to iterate once
+     */
+    public Iterable<User> exportUsers()
+    {
+        long lastRowId = nextRowId.get();
+        return () -> rows.headMap(lastRowId, true).values().stream()
+                .map(userRepository::get)
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+
+    /**
+     * Get a single user matching the given email
+     * @param email the email address of the user
+     * @return the user associated to that email
+     */
+    public User getUser(String email)
+    {
+        User user = userRepository.get(email);
+
+        if (user == null)
         {
-            readWriteLock.writeLock().unlock();
+            throw new NotFoundException("The user with email ["+email+"] does not exist");
         }
+
+        return user;
     }
 
     /**
-     * Get all users matching the given criteria
-     * If no criteria is provided, return all users
-     * @param criteria an existing criteria to filter on
-     * @param value the value of the criteria
-     * @return a list of user matching the given criteria
+     * Delete a user from the cache
+     * @param email the key of the user to delete
+     * @return true if the user has been deleted
+     * Throw an exception if the user cannot be deleted
      */
-    public List<User> getAllUsers(String criteria, String value)
+    public boolean deleteUser(String email)
     {
+        Lock lock = locks.get(email);
+        long ticket;
+        lock.lock();
         try
         {
-            readWriteLock.readLock().lock();
+            ticket = messageBus.send(delete(email, true));
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        messageBus.awaitSent(ticket);
+        return true;
+    }
+
+    /**
+     * Apply many creations, updates and deletions at once
+     *
+     * The operations are applied in chunks : each chunk locks the stripes of its users once,
+     * shares a single fsync of the write-ahead log and sends its events in a single batch.
+     * The operations on a same user are applied in the order of the list.
+     * With the always fsync policy, the users of a chunk may be read before the fsync
+     * of the chunk completes, but this method only returns once it has completed.
+     * @param operations the operations to apply
+     * @return the failure of each operation, null when it has succeeded
+     */
+    public List<RuntimeException> applyBulk(List<BulkOperation> operations)
+    {
+        RuntimeException[] failures = new RuntimeException[operations.size()];
+        for (int from = 0; from < operations.size(); from += BULK_CHUNK_SIZE)
+        {
+            applyChunk(operations, from, Math.min(operations.size(), from + BULK_CHUNK_SIZE), failures);
+        }
+        return Arrays.asList(failures);
+    }
+
+    /**
+     * Import the users of a CSV or newline delimited JSON file, see {@link UserFileParser}
+     *
+     * The file is parsed, and the users are stored and indexed, by several threads, which is much
+     * faster than creating them one by one. The import is all or nothing : if a line is invalid,
+     * or a user has the email or the nickname of another one, no user is imported.
+     * Writes wait for the import but reads do not, so the import is meant to seed an instance
+     * before it serves requests. No event is sent for the users imported.
+     * @param file the file to import
+     * @return the number of users imported
+     */
+    public int importUsers(Path file) throws IOException
+    {
+        long start = System.nanoTime();
+        List<List<User>> ranges = UserFileParser.parse(file, Runtime.getRuntime().availableProcessors());
+        int count = ranges.stream().mapToInt(List::size).sum();
 
-            if (criteria == null)
+        locks.lockAll();
+        try
+        {
+            //
+            // Check every user before the first one is stored
+            //
+            Set<String> emails = ConcurrentHashMap.newKeySet(count);
+            Set<String> nicknames = ConcurrentHashMap.newKeySet(count);
+            AtomicReference<RuntimeException> conflict = new AtomicReference<>();
+            IntStream.range(0, ranges.size()).parallel().forEach(range ->
             {
-                return userRepository.values().stream()
-                        .collect(Collectors.toList());
+                for (User user : ranges.get(range))
+                {
+                    String email = user.getEmail();
+                    String nickname = user.getNickname();
+                    if (userRepository.containsKey(email) || !emails.add(email))
+                    {
+                        conflict.compareAndSet(null,
+                                new ConflictException("A user with email ["+email+"] has already been created"));
+                    }
+                    else if (nicknameIndex.containsKey(nickname) || !nicknames.add(nickname))
+                    {
+                        conflict.compareAndSet(null,
+                                new ConflictException("A user with nickname ["+nickname+"] has already been created"));
+                    }
+                }
+            });
+            if (conflict.get() != null)
+            {
+                throw conflict.get();
             }
-            else
+
+            //
+            // Log the users before they are visible, like single creations
+            //
+            if (writeAheadLog != null)
             {
-                List<User> users = new ArrayList<>();
-                for(Map.Entry<String, Map<String, Object>> entry : userFilterableRepository.entrySet())
+                for (List<User> range : ranges)
                 {
-
-                    Map<String, Object> filterable = entry.getValue();
-                    if(filterable.get(criteria).equals(value.toLowerCase()))
+                    for (User user : range)
                     {
-                        users.add(userRepository.get(entry.getKey()));
+                        writeAheadLog.logCreate(user, false);
                     }
                 }
-
-                return users;
+                writeAheadLog.awaitDurable(writeAheadLog.getLastSequence());
             }
+
+            storeAll(ranges);
         }
         finally
         {
-            readWriteLock.readLock().unlock();
+            locks.unlockAll();
+        }
+
+        //
+        // A restart loads the snapshot rather than replaying the whole import
+        //
+        if (snapshotManager != null)
+        {
+            takeSnapshot();
         }
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        logger.info("The " + count + " users of [" + file + "] have been imported in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms ("
+                + (long) (count * 1e9 / elapsedNanos) + " users/s)");
+        return count;
     }
 
     /**
-     * Get a single user matching the given email
-     * @param email the email address of the user
-     * @return the user associated to that email
+     * Store and index many new users at once, several threads each storing a range of users
+     * or building an index. The caller must prevent any other update while the users are stored.
+     * @param ranges the new users, their emails must not be stored yet
      */
-    public User getUser(String email)
+    private void storeAll(List<List<User>> ranges)
     {
-        try
+        ranges.parallelStream().forEach(range -> range.replaceAll(stringPools::intern));
+
+        //
+        // Each range gets its own block of row ids, so the users keep the order of the ranges.
+        // The ranges are stored by their own threads, while the nickname, criteria and prefix
+        // indexes are built by one thread per index, the last user of a nickname owning it.
+        //
+        long[] firstRowIds = new long[ranges.size()];
+        long firstRowId = nextRowId.get() + 1;
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++)
+        {
+            List<User> range = ranges.get(i);
+            long rangeFirstRowId = firstRowId;
+            firstRowIds[i] = rangeFirstRowId;
+            firstRowId += range.size();
+            tasks.add(() ->
+            {
+                long rowId = rangeFirstRowId;
+                for (User user : range)
+                {
+                    String email = user.getEmail();
+                    userRepository.put(email, user);
+                    columns.add(user, rowId);
+                    rows.put(rowId++, email);
+                }
+            });
+        }
+        tasks.add(() ->
         {
-            readWriteLock.readLock().lock();
+            for (List<User> range : ranges)
+            {
+                for (User user : range)
+                {
+                    nicknameIndex.put(user.getNickname(), user.getEmail());
+                }
+            }
+        });
+        tasks.add(() -> criteriaIndex.addAll(ranges, firstRowIds));
+        tasks.add(() -> prefixIndex.addAll(ranges));
+        tasks.add(() -> trigramIndex.addAll(ranges));
+        tasks.parallelStream().forEach(Runnable::run);
+        nextRowId.set(firstRowId - 1);
+    }
 
-            User user = userRepository.get(email);
+    public UserRepository getUserRepository() {
+        return userRepository;
+    }
 
-            if (user == null)
+    /**
+     * @return the pools of the values of the users stored
+     */
+    public StringPools getStringPools()
+    {
+        return stringPools;
+    }
+
+    /**
+     * @return the time the writes wait for the lock of the stripe of their user
+     */
+    public LatencyHistogram getLockWaitTimes()
+    {
+        return locks.getWaitTimes();
+    }
+
+    /**
+     * @return the time the writes hold the lock of the stripe of their user
+     */
+    public LatencyHistogram getLockHoldTimes()
+    {
+        return locks.getHoldTimes();
+    }
+
+    /**
+     * Get the sizes of the indexes which are counted, so that reading them does not walk the indexes
+     * The criteria indexes give their number of distinct values
+     * @return the size of each index
+     */
+    public Map<String, Integer> getIndexSizes()
+    {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        sizes.put("users", columns.size());
+        sizes.put("nicknames", nicknameIndex.size());
+        for (Criteria criteria : Criteria.values())
+        {
+            if (!criteria.equals(Criteria.UNDEFINED))
             {
-                throw new NotFoundException("The user with email ["+email+"] does not exist");
+                sizes.put(criteria.getCriteriaName() + "Values", criteriaIndex.distinctValues(criteria));
             }
+        }
+        sizes.put("trigrams", trigramIndex.size());
+        return sizes;
+    }
 
-            return user;
+    /**
+     * Write a snapshot of all users, then delete the log segments it covers
+     * Writers are only paused while the sequence of the snapshot is read,
+     * not while the users are written
+     */
+    public synchronized void takeSnapshot()
+    {
+        if (snapshotManager == null)
+        {
+            throw new IllegalStateException("The snapshots are not enabled");
+        }
+
+        //
+        // A mutation holds its stripe from the moment it is logged until it is applied,
+        // so once all stripes are held every mutation up to this sequence is applied
+        //
+        long sequence;
+        locks.lockAll();
+        try
+        {
+            sequence = writeAheadLog.getLastSequence();
         }
         finally
         {
-            readWriteLock.readLock().unlock();
+            locks.unlockAll();
+        }
+
+        if (sequence == lastSnapshotSequence)
+        {
+            return;
         }
+
+        writeAheadLog.roll();
+        snapshotManager.write(sequence, userRepository);
+        writeAheadLog.deleteSegmentsUpTo(sequence);
+        lastSnapshotSequence = sequence;
     }
 
     /**
-     * Delete a user from the cache
-     * @param email the key of the user to delete
-     * @return true if the user has been deleted
-     * Throw an exception if the user cannot be deleted
+     * Create a user, the lock of its stripe must be held
+     * @param user the user to create
+     * @param waitForDisk false if the caller waits for the write-ahead log itself
+     * @return the message notifying the creation, to send while the lock is still held
      */
-    public boolean deleteUser(String email)
+    private BusMessage create(User user, boolean waitForDisk)
     {
-        try
+        String email = user.getEmail();
+        String nickname = user.getNickname();
+
+        if (userRepository.containsKey(email))
+        {
+            logger.warn("Conflict : The user cannot be created as there is an existing user with the given id ");
+            throw new ConflictException("A user with email ["+email+"] has already been created");
+        }
+
+        //
+        // Reserve the nickname, this is atomic across all stripes
+        //
+        if (nicknameIndex.putIfAbsent(nickname, email) != null)
         {
-            readWriteLock.writeLock().lock();
+            logger.warn("Conflict : The user cannot be created as there is an existing user with the given nickname ");
+            throw new ConflictException("A user with nickname ["+nickname+"] has already been created");
+        }
 
-            if (!userRepository.containsKey(email))
+        //
+        // Log the creation before it is visible, and while the nickname is reserved,
+        // so that the log order matches the order of the mutations it depends on
+        //
+        if (writeAheadLog != null)
+        {
+            try
+            {
+                writeAheadLog.logCreate(user, waitForDisk);
+            }
+            catch (RuntimeException exception)
             {
-                logger.warn("Not found : The user cannot be deleted as there is no existing user with the given id ");
-                throw new NotFoundException("A user with email ["+email+"] has not been found" +
-                        " and cannot be deleted");
+                nicknameIndex.remove(nickname, email);
+                throw exception;
             }
+        }
+
+        //
+        // Save the user in the user cache and filterable cache, sharing the values of the users already stored
+        //
+        User stored = stringPools.intern(user);
+        userRepository.put(email, stored);
+        index(null, stored);
 
-            userFilterableRepository.remove(email);
-            User user = userRepository.remove(email);
+        //
+        // Notify the creation of a new user
+        //
+        return new BusMessage(BusMessage.USER_ADD, stored);
+    }
+
+    /**
+     * Update a user, the lock of its stripe must be held
+     * @param user the user to update
+     * @param waitForDisk false if the caller waits for the write-ahead log itself
+     * @return the message notifying the update, to send while the lock is still held
+     */
+    private BusMessage update(User user, boolean waitForDisk)
+    {
+        String email = user.getEmail();
+
+        User previous = userRepository.get(email);
+        if (previous == null)
+        {
+            logger.warn("Not Found : The user cannot be updated as there is no existing user with the given id ");
+            throw new NotFoundException("A user with email ["+email+"] does not exist." +
+                    " Therefore, the user cannot be updated");
+        }
+
+        //
+        // Let's check if the user has a correct password
+        //
+        if(!validatePassword(previous, user))
+        {
+            throw INVALID_PASSWORD;
+        }
+
+        //
+        // A new nickname must not be used by some other user
+        //
+        String nickname = user.getNickname();
+        boolean nicknameChanged = !nickname.equals(previous.getNickname());
+        if (nicknameChanged)
+        {
+            String nicknameOwner = nicknameIndex.putIfAbsent(nickname, email);
+            if (nicknameOwner != null && !nicknameOwner.equals(email))
+            {
+                logger.warn("Conflict : The user cannot be updated as there is an existing user with the given nickname ");
+                throw new ConflictException("A user with nickname ["+nickname+"] has already been created");
+            }
+        }
+
+        if (writeAheadLog != null)
+        {
+            try
+            {
+                writeAheadLog.logUpdate(user, waitForDisk);
+            }
+            catch (RuntimeException exception)
+            {
+                if (nicknameChanged)
+                {
+                    nicknameIndex.remove(nickname, email);
+                }
+                throw exception;
+            }
+        }
+
+        //
+        // Save the user in the user cache and filterable cache, sharing the values of the users already stored
+        //
+        User stored = stringPools.intern(user);
+        userRepository.put(email, stored);
+        index(previous, stored);
+
+        //
+        // Notify the update of the user
+        //
+        return new BusMessage(BusMessage.USER_UPDATE, stored);
+    }
+
+    /**
+     * Delete a user, the lock of its stripe must be held
+     * @param email the key of the user to delete
+     * @param waitForDisk false if the caller waits for the write-ahead log itself
+     * @return the message notifying the deletion, to send while the lock is still held
+     */
+    private BusMessage delete(String email, boolean waitForDisk)
+    {
+        if (!userRepository.containsKey(email))
+        {
+            logger.warn("Not found : The user cannot be deleted as there is no existing user with the given id ");
+            throw new NotFoundException("A user with email ["+email+"] has not been found" +
+                    " and cannot be deleted");
+        }
+
+        //
+        // Log the deletion before the nickname is released
+        //
+        if (writeAheadLog != null)
+        {
+            writeAheadLog.logDelete(email, waitForDisk);
+        }
+
+        User user = userRepository.remove(email);
+
+        unindex(user);
+
+        //
+        // Notify the deletion of a user
+        //
+        return new BusMessage(BusMessage.USER_DELETE, user);
+    }
+
+    /**
+     * Apply the operations of a chunk, holding the stripes of all their users at once
+     * @param failures receiving the failure of each operation
+     */
+    private void applyChunk(List<BulkOperation> operations, int from, int to, RuntimeException[] failures)
+    {
+        int[] stripes = new int[to - from];
+        for (int i = from; i < to; i++)
+        {
+            String email = emailOf(operations.get(i));
+            stripes[i - from] = email == null ? 0 : locks.stripeOf(email);
+        }
+        stripes = Arrays.stream(stripes).sorted().distinct().toArray();
+
+        long ticket;
+        locks.lockStripes(stripes);
+        try
+        {
+            List<BusMessage> messages = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++)
+            {
+                try
+                {
+                    messages.add(apply(operations.get(i)));
+                }
+                catch (RuntimeException exception)
+                {
+                    failures[i] = exception;
+                }
+            }
 
             //
-            // Notify the deletion of a user
+            // A single fsync and a single batch of events for the whole chunk
             //
-            BusMessage message = new BusMessage(BusMessage.USER_DELETE, user);
-            MyFakeMessageBus.getInstance().send(message);
-
-            return true;
+            if (writeAheadLog != null && !messages.isEmpty())
+            {
+                writeAheadLog.awaitDurable(writeAheadLog.getLastSequence());
+            }
+            ticket = messageBus.sendAll(messages);
         }
         finally
         {
-            readWriteLock.writeLock().lock();
+            locks.unlockStripes(stripes);
         }
+        messageBus.awaitSent(ticket);
     }
 
-    public Map<String, User> getUserRepository() {
-        return userRepository;
+    private BusMessage apply(BulkOperation operation)
+    {
+        String action = String.valueOf(operation.getAction());
+        switch (action)
+        {
+            case BulkOperation.CREATE:
+                return create(requireUser(operation), false);
+            case BulkOperation.UPDATE:
+                return update(requireUser(operation), false);
+            case BulkOperation.DELETE:
+                if (operation.getEmail() == null)
+                {
+                    throw new IllegalArgumentException("A deletion must give the email of the user");
+                }
+                return delete(operation.getEmail(), false);
+            default:
+                throw new IllegalArgumentException("The action [" + action + "] does not exist," +
+                        " it must be one of create, update or delete");
+        }
     }
 
     /**
-     * Validate the password
-     * Used in case of update, checking that the user is allowed to update its information
-     * @param toAuthenticate the user to authenticate
-     * @return whether the user is authenticated or not
+     * @return the email of the user the operation changes, the one of its user for a creation or an update
+     * even if the operation gives another email
      */
-    private boolean validatePassword(User toAuthenticate)
+    private static String emailOf(BulkOperation operation)
     {
-        User user = userRepository.get(toAuthenticate.getEmail());
-        return user.getPassword().equals(toAuthenticate.getPassword());
+        boolean delete = BulkOperation.DELETE.equals(operation.getAction());
+        return delete || operation.getUser() == null ? operation.getEmail() : operation.getUser().getEmail();
+    }
+
+    private static User requireUser(BulkOperation operation)
+    {
+        if (operation.getUser() == null)
+        {
+            throw new IllegalArgumentException("The " + operation.getAction() + " of a user must give the user");
+        }
+        return operation.getUser();
     }
 
     /**
-     * Validate that the nickname hasn't been used already by some other user
-     * @param nickname the nickname to check
-     * @return whether the nickname can be used or not
+     * Index a user, its nickname is expected to be reserved already when it is validated
+     * @param previous the previous version of the user, or null if it is new
+     * @param user the user to index
      */
-    private boolean validateNickname(String nickname)
+    private void index(User previous, User user)
     {
-        for(Map.Entry<String, User> entry : userRepository.entrySet())
+        String email = user.getEmail();
+        nicknameIndex.put(user.getNickname(), email);
+        if (previous == null)
         {
-            User user = entry.getValue();
-            if(user.getNickname().equals(nickname))
+            long rowId = nextRowId.incrementAndGet();
+            columns.add(user, rowId);
+            criteriaIndex.add(user, rowId);
+            prefixIndex.add(user);
+            trigramIndex.add(user.getNickname());
+            rows.put(rowId, email);
+        }
+        else
+        {
+            columns.update(user);
+            criteriaIndex.update(previous, user, columns.rowId(email));
+            prefixIndex.update(previous, user);
+            if (!previous.getNickname().equals(user.getNickname()))
             {
-                return false;
+                nicknameIndex.remove(previous.getNickname(), email);
+                trigramIndex.remove(previous.getNickname());
+                trigramIndex.add(user.getNickname());
             }
         }
+    }
 
-        return true;
+    /**
+     * Remove a user from the indexes
+     * @param user the user removed
+     */
+    private void unindex(User user)
+    {
+        String email = user.getEmail();
+        long rowId = columns.remove(email);
+        rows.remove(rowId);
+        criteriaIndex.remove(user, rowId);
+        prefixIndex.remove(user);
+        trigramIndex.remove(user.getNickname());
+        nicknameIndex.remove(user.getNickname(), email);
+    }
+
+    /**
+     * Read the users following the given row id, in the order of the row ids
+     * @param emails the emails of the candidate users by row id
+     * @param afterRowId the last row id of the previous page
+     * @param limit the maximum number of users to return
+     * @param filter the condition the users must match
+     * @return the page, with a cursor if there may be more users
+     */
+    private UserPage page(NavigableMap<Long, String> emails, long afterRowId, int limit, Predicate<User> filter)
+    {
+        return page(emails.tailMap(afterRowId, false).entrySet().iterator(), afterRowId, limit, filter);
+    }
+
+    /**
+     * Read the users of the given row ids
+     * @param iterator the emails of the candidate users following the last row id of the previous page
+     * @param afterRowId the last row id of the previous page
+     * @param limit the maximum number of users to return
+     * @param filter the condition the users must match
+     * @return the page, with a cursor if there may be more users
+     */
+    private UserPage page(Iterator<Map.Entry<Long, String>> iterator, long afterRowId, int limit,
+                          Predicate<User> filter)
+    {
+        List<User> users = new ArrayList<>(Math.min(limit, 1024));
+        long lastRowId = afterRowId;
+        while (users.size() < limit && iterator.hasNext())
+        {
+            Map.Entry<Long, String> entry = iterator.next();
+            User user = userRepository.get(entry.getValue());
+            if (user != null && filter.test(user))
+            {
+                users.add(user);
+                lastRowId = entry.getKey();
+            }
+        }
+
+        return new UserPage(users, iterator.hasNext() ? PageCursor.encode(lastRowId) : null);
+    }
+
+    private static Criteria indexedCriteria(String criteria)
+    {
+        Criteria enumCriteria = Criteria.fromString(criteria);
+        if (enumCriteria.equals(Criteria.UNDEFINED))
+        {
+            throw new IllegalArgumentException("The given criteria ["+criteria+"] does not correspond " +
+                    "to any possible filter");
+        }
+        return enumCriteria;
+    }
+
+    /**
+     * Validate the password
+     * Used in case of update, checking that the user is allowed to update its information
+     * @param user the user currently stored
+     * @param toAuthenticate the user to authenticate
+     * @return whether the user is authenticated or not
+     */
+    private boolean validatePassword(User user, User toAuthenticate)
+    {
+        return user.getPassword().equals(toAuthenticate.getPassword());
     }
 }
@@ -1,23 +1,42 @@
 package com.example.controllers;
 
+import com.example.entities.BulkItemResult;
+import com.example.entities.BulkOperation;
 import com.example.entities.User;
+import com.example.entities.UserPage;
+import com.example.exceptions.NotFoundException;
 import com.example.services.UserServices;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.is;
 
 public class UserControllerTest
 {
+    private UserServices userServices;
     private UserController userController;
 
     @Before
     public void setUp()
     {
-        userController = new UserController(new UserServices());
+        userServices = new UserServices();
+        userController = new UserController(userServices);
     }
 
     @Test
@@ -113,6 +132,27 @@ public class UserControllerTest
         Assert.assertThat( response.getStatusCode().equals(HttpStatus.NOT_FOUND), is(true));
     }
 
+    @Test
+    public void getUser_Non_Existing_User()
+    {
+        //
+        // The failure is answered with its message, and has no stack trace to fill
+        //
+        ResponseEntity<?> response =  userController.getUser("john@gmail.com");
+        Assert.assertThat( response.getStatusCode().equals(HttpStatus.NOT_FOUND), is(true));
+        Assert.assertThat( response.getBody(), is("The user with email [john@gmail.com] does not exist"));
+
+        try
+        {
+            userServices.getUser("john@gmail.com");
+            Assert.fail();
+        }
+        catch (NotFoundException exception)
+        {
+            Assert.assertThat( exception.getStackTrace().length, is(0));
+        }
+    }
+
     @Test
     public void deleteUser_OK()
     {
@@ -125,4 +165,231 @@ public class UserControllerTest
         ResponseEntity<?> response =  userController.deleteUser("john@gmail.com");
         Assert.assertThat( response.getStatusCode().equals(HttpStatus.OK), is(true));
     }
+
+    @Test
+    public void getAll_Default_Page_Size()
+    {
+        for (int i = 0; i <= UserController.DEFAULT_PAGE_SIZE; i++)
+        {
+            userController.createUser(new User("John", "Smith", "Magic John " + i,
+                    "john" + i + "@gmail.com", "qwerty", "France" ));
+        }
+
+        //
+        // Without a limit, a single page is returned rather than all the users
+        //
+        UserPage page = (UserPage) userController.getAll(null, null).getBody();
+        Assert.assertThat(page.getUsers().size(), is(UserController.DEFAULT_PAGE_SIZE));
+        Assert.assertThat(page.getNextCursor() == null, is(false));
+
+        page = (UserPage) userController.getUsers("country", "France", null, null).getBody();
+        Assert.assertThat(page.getUsers().size(), is(UserController.DEFAULT_PAGE_SIZE));
+    }
+
+    @Test
+    public void getUsers_Page()
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+        userController.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+
+        ResponseEntity<?> response = userController.getUsers("country", "France", 1, null);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        UserPage page = (UserPage) response.getBody();
+        Assert.assertThat(page.getUsers().size(), is(1));
+
+        response = userController.getUsers("country", "France", 1, page.getNextCursor());
+        page = (UserPage) response.getBody();
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("francis@gmail.com"));
+    }
+
+    @Test
+    public void getAll_Limit_Too_Large()
+    {
+        ResponseEntity<?> response = userController.getAll(UserController.MAX_PAGE_SIZE + 1, null);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
+
+    @Test
+    public void exportUsers_Ndjson() throws IOException
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+        userController.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ResponseEntity<StreamingResponseBody> response = userController.exportUsers(false);
+        response.getBody().writeTo(output);
+
+        String[] lines = output.toString("UTF-8").split("\n");
+        Assert.assertThat(lines.length, is(2));
+        Assert.assertThat(lines[0].startsWith("{") && lines[0].contains("\"email\":\"john@gmail.com\""), is(true));
+        Assert.assertThat(lines[1].contains("\"email\":\"francis@gmail.com\""), is(true));
+    }
+
+    @Test
+    public void exportUsers_Gzip() throws IOException
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ResponseEntity<StreamingResponseBody> response = userController.exportUsers(true);
+        response.getBody().writeTo(output);
+        Assert.assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())), StandardCharsets.UTF_8));
+        Assert.assertThat(reader.readLine().contains("\"email\":\"john@gmail.com\""), is(true));
+        Assert.assertThat(reader.readLine() == null, is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void exportUsers_Gzip_Client_Gone() throws IOException
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+
+        //
+        // The compressed users only reach the client when the stream is closed, which fails
+        //
+        ResponseEntity<StreamingResponseBody> response = userController.exportUsers(true);
+        response.getBody().writeTo(new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("The client has gone");
+            }
+        });
+    }
+
+    @Test
+    public void bulk_Statuses()
+    {
+        userController.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+
+        ResponseEntity<?> response = userController.bulk(Arrays.asList(
+                new BulkOperation(BulkOperation.CREATE, new User("John", "Smith", "Magic John",
+                        "john@gmail.com", "qwerty", "France" ), null),
+                new BulkOperation(BulkOperation.CREATE, new User("John", "Smith", "Magic John",
+                        "john", "qwerty", "France" ), null),
+                new BulkOperation(BulkOperation.CREATE, new User("Francis", "Scott", "Francis is Magic",
+                        "francis@gmail.com", "qwerty", "France" ), null),
+                new BulkOperation(BulkOperation.UPDATE, new User("Francis", "Smith", "Magic Francis",
+                        "francis@gmail.com", "wrong", "England" ), null),
+                new BulkOperation(BulkOperation.DELETE, null, "adam@gmail.com"),
+                new BulkOperation(BulkOperation.DELETE, null, "john@gmail.com")));
+
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        List<?> results = (List<?>) response.getBody();
+        int[] statuses = results.stream().mapToInt(result -> ((BulkItemResult) result).getStatus()).toArray();
+        Assert.assertThat(Arrays.equals(statuses, new int[] {200, 400, 409, 401, 404, 200}), is(true));
+        Assert.assertThat(((BulkItemResult) results.get(5)).getEmail(), is("john@gmail.com"));
+        Assert.assertThat(((BulkItemResult) results.get(5)).getIndex(), is(5));
+    }
+
+    @Test
+    public void bulk_Email_Differs_From_The_User()
+    {
+        userController.createUser(new User("Adam", "Smith", "Magic Adam",
+                "adam@gmail.com", "qwerty", "France" ));
+        userController.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+
+        ResponseEntity<?> response = userController.bulk(Arrays.asList(
+                new BulkOperation(BulkOperation.UPDATE, new User("Francis", "Smith", "Magic Francis",
+                        "francis@gmail.com", "qwerty", "England" ), "adam@gmail.com"),
+                new BulkOperation(BulkOperation.CREATE, new User("John", "Smith", "Magic John",
+                        "john@gmail.com", "qwerty", "France" ), "adam@gmail.com")));
+
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        List<?> results = (List<?>) response.getBody();
+        Assert.assertThat(((BulkItemResult) results.get(0)).getStatus(), is(400));
+        Assert.assertThat(((BulkItemResult) results.get(1)).getStatus(), is(400));
+        Assert.assertThat(userServices.getUser("francis@gmail.com").getCountry(), is("france"));
+        Assert.assertThat(userServices.countUsers(null, null), is(2));
+    }
+
+    @Test
+    public void bulkStream_Ndjson()
+    {
+        String input = "{\"action\":\"create\",\"user\":{\"firstname\":\"John\",\"lastname\":\"Smith\"," +
+                "\"nickname\":\"Magic John\",\"email\":\"john@gmail.com\",\"password\":\"qwerty\",\"country\":\"France\"}}\n" +
+                "{\"action\":\"delete\",\"email\":\"john@gmail.com\"}\n" +
+                "{\"action\":\"delete\",\"email\":\"john@gmail.com\"}\n";
+
+        ResponseEntity<?> response = userController.bulkStream(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        List<?> results = (List<?>) response.getBody();
+        Assert.assertThat(results.size(), is(3));
+        Assert.assertThat(((BulkItemResult) results.get(1)).getStatus(), is(200));
+        Assert.assertThat(((BulkItemResult) results.get(2)).getStatus(), is(404));
+    }
+
+    @Test
+    public void bulkStream_Unreadable_Line()
+    {
+        String input = "{\"action\":\"delete\",\"email\":\"john@gmail.com\"}\n{\"action\":";
+
+        ResponseEntity<?> response = userController.bulkStream(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
+
+    @Test
+    public void query_OK()
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+
+        ResponseEntity<?> response = userController.query("country=france AND lastname=smith", null, null);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        Assert.assertThat(((UserPage) response.getBody()).getUsers().size(), is(1));
+    }
+
+    @Test
+    public void query_Invalid()
+    {
+        ResponseEntity<?> response = userController.query("country", null, null);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
+
+    @Test
+    public void count_OK()
+    {
+        userController.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+
+        ResponseEntity<?> response = userController.count("country", "france");
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.OK), is(true));
+        Assert.assertThat(response.getBody(), is(1));
+    }
+
+    @Test
+    public void count_Missing_Value()
+    {
+        ResponseEntity<?> response = userController.count("country", null);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
+
+    @Test
+    public void facets_Top_Too_Large()
+    {
+        ResponseEntity<?> response = userController.facets("country", UserController.MAX_FACET_SIZE + 1);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
+
+    @Test
+    public void autocomplete_Limit_Too_Large()
+    {
+        ResponseEntity<?> response = userController.autocomplete("jo", null, UserController.MAX_AUTOCOMPLETE_SIZE + 1);
+        Assert.assertThat(response.getStatusCode().equals(HttpStatus.BAD_REQUEST), is(true));
+    }
 }
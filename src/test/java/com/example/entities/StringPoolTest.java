@@ -0,0 +1,72 @@
+package com.example.entities;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.services.UserServices;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class StringPoolTest
+{
+    @Test
+    public void users_Share_Their_Country()
+    {
+        UserServices userServices = new UserServices();
+        User thierry = userServices.createUser(new User("Thierry", "Henry", "King Henry", "thierry@gmail.com",
+                "henry", new String("France")));
+        User francis = userServices.createUser(new User("Francis", "Smith", "Magic Francis", "francis@gmail.com",
+                "qwerty", new String("FRANCE")));
+
+        //
+        // The users stored share their country, not the users given to the service
+        //
+        Assert.assertThat(thierry.getCountry(), not(sameInstance(francis.getCountry())));
+        Assert.assertThat(userServices.getUser("thierry@gmail.com").getCountry(),
+                sameInstance(userServices.getUser("francis@gmail.com").getCountry()));
+
+        StringPools stringPools = userServices.getStringPools();
+        Assert.assertThat(stringPools.getPools().get(Criteria.COUNTRY).getHits(), greaterThan(0L));
+        Assert.assertThat(stringPools.getPools().containsKey(Criteria.NICKNAME), is(false));
+    }
+
+    @Test
+    public void services_Do_Not_Share_Their_Pools()
+    {
+        StringPools first = new UserServices().getStringPools();
+        StringPools second = new UserServices().getStringPools();
+
+        first.intern(Criteria.COUNTRY, "france");
+        Assert.assertThat(first.getPools().get(Criteria.COUNTRY).getSize(), is(1));
+        Assert.assertThat(second.getPools().get(Criteria.COUNTRY).getSize(), is(0));
+    }
+
+    @Test
+    public void intern_Stops_Pooling_When_Full()
+    {
+        StringPools stringPools = new StringPools(Collections.singletonList(Criteria.COUNTRY), 1);
+
+        String france = stringPools.intern(Criteria.COUNTRY, new String("france"));
+        Assert.assertThat(stringPools.intern(Criteria.COUNTRY, new String("france")), sameInstance(france));
+
+        String spain = new String("spain");
+        Assert.assertThat(stringPools.intern(Criteria.COUNTRY, spain), sameInstance(spain));
+        Assert.assertThat(stringPools.intern(Criteria.COUNTRY, new String("spain")), not(sameInstance(spain)));
+
+        StringPool pool = stringPools.getPools().get(Criteria.COUNTRY);
+        Assert.assertThat(pool.getSize(), is(1));
+        Assert.assertThat(pool.getHits(), is(1L));
+        Assert.assertThat(pool.getMisses(), is(3L));
+        Assert.assertThat(pool.getHitRate(), is(0.25));
+
+        String lastname = new String("henry");
+        Assert.assertThat(stringPools.intern(Criteria.LASTNAME, lastname), sameInstance(lastname));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pools_Must_Hold_A_Value()
+    {
+        new StringPools(StringPools.DEFAULT_FIELDS, 0);
+    }
+}
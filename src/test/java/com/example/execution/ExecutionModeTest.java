@@ -0,0 +1,103 @@
+package com.example.execution;
+
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ExecutionModeTest
+{
+    @Test
+    public void fromName()
+    {
+        Assert.assertThat(ExecutionMode.fromName("servlet"), is(ExecutionMode.SERVLET));
+        Assert.assertThat(ExecutionMode.fromName("async"), is(ExecutionMode.ASYNC));
+        Assert.assertThat(ExecutionMode.fromName("virtual"), is(ExecutionMode.VIRTUAL));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromName_Unknown()
+    {
+        ExecutionMode.fromName("reactive");
+    }
+
+    @Test
+    public void servlet_Has_No_Executor()
+    {
+        Assert.assertThat(ExecutionMode.SERVLET.createExecutor(4, 16), is(nullValue()));
+    }
+
+    @Test
+    public void async_Runs_On_The_Request_Threads() throws Exception
+    {
+        ExecutorService executor = ExecutionMode.ASYNC.createExecutor(4, 16);
+        try
+        {
+            Thread thread = executor.submit(Thread::currentThread).get();
+
+            Assert.assertThat(thread.getName(), startsWith("user-request-"));
+            Assert.assertThat(thread.isDaemon(), is(true));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void async_Rejects_Beyond_The_Queue() throws Exception
+    {
+        ExecutorService executor = ExecutionMode.ASYNC.createExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try
+        {
+            executor.submit(() -> { release.await(); return null; });
+            executor.submit(() -> null);
+            try
+            {
+                executor.submit(() -> null);
+                Assert.fail("The third handler should be refused");
+            }
+            catch (RejectedExecutionException exception)
+            {
+                // The thread is busy and the queue is full
+            }
+        }
+        finally
+        {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void virtual_Requires_Java_21()
+    {
+        boolean available = false;
+        try
+        {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            available = true;
+        }
+        catch (NoSuchMethodException exception)
+        {
+            // Before Java 21
+        }
+
+        try
+        {
+            ExecutorService executor = ExecutionMode.VIRTUAL.createExecutor(4, 16);
+            executor.shutdown();
+            Assert.assertThat(available, is(true));
+        }
+        catch (IllegalStateException exception)
+        {
+            Assert.assertThat(available, is(false));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.messaging;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class BusMessageCodecTest
+{
+    private final User john = new User("John", "Smith", "johnny", "john@gmail.com", "qwerty", "France");
+
+    @Test
+    public void encode_And_Decode()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = BusMessageCodec.encode(new BusMessage(BusMessage.USER_UPDATE, john), buffer);
+        Assert.assertThat(buffer.position(), is(length));
+
+        buffer.flip();
+        BusMessage decoded = BusMessageCodec.decode(buffer);
+        Assert.assertThat(decoded.getTopic(), is(BusMessage.USER_UPDATE));
+        Assert.assertThat(decoded.getPayload(), is(john));
+        Assert.assertThat(((User) decoded.getPayload()).getPassword(), nullValue());
+        Assert.assertThat(buffer.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void encode_Never_Writes_The_Password()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = BusMessageCodec.encode(new BusMessage(BusMessage.USER_ADD, john), buffer);
+
+        String encoded = new String(buffer.array(), 0, length, StandardCharsets.ISO_8859_1);
+        Assert.assertThat(encoded, not(containsString("qwerty")));
+        Assert.assertThat(encoded, containsString("john@gmail.com"));
+    }
+
+    @Test
+    public void encode_Non_Ascii_Like_String_GetBytes()
+    {
+        User user = new User("J\u00e9r\u00f4me", "M\u00fcller", "\ud83d\ude00smile", "jerome@gmail.com", "qwerty",
+                "\u65e5\u672c");
+        BusMessage message = new BusMessage(BusMessage.USER_ADD, user);
+        ByteBuffer buffer = ByteBuffer.allocate(BusMessageCodec.maxEncodedSize(message));
+        int length = BusMessageCodec.encode(message, buffer);
+
+        int expected = 2 + 5 * Short.BYTES;
+        for (String field : new String[] { user.getEmail(), user.getFirstname(), user.getLastname(),
+                user.getNickname(), user.getCountry() })
+        {
+            expected += field.getBytes(StandardCharsets.UTF_8).length;
+        }
+        Assert.assertThat(length, is(expected));
+
+        buffer.flip();
+        Assert.assertThat(BusMessageCodec.decode(buffer).getPayload(), is(user));
+    }
+
+    @Test
+    public void encode_Several_Messages_In_A_Reused_Buffer()
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        BusMessageCodec.encode(new BusMessage(BusMessage.USER_ADD, john), buffer);
+        BusMessageCodec.encode(new BusMessage(BusMessage.USER_DELETE, john), buffer);
+
+        buffer.flip();
+        Assert.assertThat(BusMessageCodec.decode(buffer).getTopic(), is(BusMessage.USER_ADD));
+        Assert.assertThat(BusMessageCodec.decode(buffer).getTopic(), is(BusMessage.USER_DELETE));
+
+        buffer.clear();
+        BusMessageCodec.encode(new BusMessage(BusMessage.USER_UPDATE, john), buffer);
+        buffer.flip();
+        Assert.assertThat(BusMessageCodec.decode(buffer).getTopic(), is(BusMessage.USER_UPDATE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_Unknown_Version()
+    {
+        BusMessageCodec.decode(ByteBuffer.wrap(new byte[] { 42, 1 }));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.messaging;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class CoalescingSubscriberTest
+{
+    private final User john = new User("John", "Smith", "johnny", "john@gmail.com", "qwerty", "France");
+    private final User johnUpdated = new User("John", "Smith", "jojo", "john@gmail.com", "qwerty", "France");
+    private final User francis = new User("Francis", "Cabrel", "cabrel", "francis@gmail.com", "azerty", "France");
+
+    private List<List<BusMessage>> batches;
+    private CoalescingSubscriber coalescingSubscriber;
+
+    @Before
+    public void setUp()
+    {
+        batches = new ArrayList<>();
+        coalescingSubscriber = new CoalescingSubscriber(batches::add, 100, 60_000, "test-batches");
+    }
+
+    @After
+    public void tearDown()
+    {
+        coalescingSubscriber.close();
+    }
+
+    @Test
+    public void add_Then_Updates_Is_One_Add()
+    {
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_ADD, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_UPDATE, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_UPDATE, johnUpdated));
+        coalescingSubscriber.flush();
+
+        Assert.assertThat(batches.size(), is(1));
+        Assert.assertThat(batches.get(0).size(), is(1));
+        Assert.assertThat(batches.get(0).get(0).getTopic(), is(BusMessage.USER_ADD));
+        Assert.assertThat(batches.get(0).get(0).getPayload(), sameInstance(johnUpdated));
+        Assert.assertThat(coalescingSubscriber.getReceivedMessages(), is(3L));
+        Assert.assertThat(coalescingSubscriber.getDeliveredMessages(), is(1L));
+    }
+
+    @Test
+    public void add_Then_Delete_Cancel_Out()
+    {
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_ADD, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_ADD, francis));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_UPDATE, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_DELETE, john));
+        coalescingSubscriber.flush();
+
+        Assert.assertThat(batches.size(), is(1));
+        Assert.assertThat(batches.get(0).size(), is(1));
+        Assert.assertThat(batches.get(0).get(0).getPayload(), sameInstance(francis));
+    }
+
+    @Test
+    public void update_Then_Delete_Is_Delete()
+    {
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_UPDATE, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_DELETE, john));
+        coalescingSubscriber.flush();
+
+        Assert.assertThat(batches.get(0).size(), is(1));
+        Assert.assertThat(batches.get(0).get(0).getTopic(), is(BusMessage.USER_DELETE));
+    }
+
+    @Test
+    public void delete_Then_Add_Is_Update()
+    {
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_DELETE, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_ADD, johnUpdated));
+        coalescingSubscriber.flush();
+
+        Assert.assertThat(batches.get(0).size(), is(1));
+        Assert.assertThat(batches.get(0).get(0).getTopic(), is(BusMessage.USER_UPDATE));
+        Assert.assertThat(batches.get(0).get(0).getPayload(), sameInstance(johnUpdated));
+    }
+
+    @Test
+    public void flush_Empty_Delivers_Nothing()
+    {
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_ADD, john));
+        coalescingSubscriber.onMessage(new BusMessage(BusMessage.USER_DELETE, john));
+        coalescingSubscriber.flush();
+
+        Assert.assertThat(batches.isEmpty(), is(true));
+    }
+
+    @Test
+    public void subscribe_Batches_From_The_Bus() throws InterruptedException
+    {
+        MyFakeMessageBus messageBus = new MyFakeMessageBus(1024, new SleepingWaitStrategy());
+        List<BusMessage> received = new CopyOnWriteArrayList<>();
+        Subscription subscription = messageBus.subscribe(received::addAll, 1000, 60_000);
+
+        messageBus.send(new BusMessage(BusMessage.USER_ADD, john));
+        for (int i = 0; i < 100; i++)
+        {
+            messageBus.send(new BusMessage(BusMessage.USER_UPDATE, johnUpdated));
+        }
+        while (subscription.getLag() > 0)
+        {
+            Thread.sleep(1);
+        }
+
+        //
+        // Nothing reaches the batch size nor the end of the window, the batch is delivered on close
+        //
+        Assert.assertThat(received.isEmpty(), is(true));
+        messageBus.unsubscribe(subscription);
+        Assert.assertThat(received.size(), is(1));
+        Assert.assertThat(received.get(0).getTopic(), is(BusMessage.USER_ADD));
+        Assert.assertThat(received.get(0).getPayload(), sameInstance(johnUpdated));
+    }
+}
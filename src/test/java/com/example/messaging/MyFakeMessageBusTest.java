@@ -0,0 +1,186 @@
+package com.example.messaging;
+
+import static org.hamcrest.Matchers.*;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the same tests with every {@link WaitStrategy}
+ */
+@RunWith(Parameterized.class)
+public class MyFakeMessageBusTest
+{
+    private static final int CAPACITY = 16;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> waitStrategies()
+    {
+        return Arrays.asList(new Object[][] { { "busy-spin" }, { "yielding" }, { "sleeping" }, { "blocking" } });
+    }
+
+    private final String waitStrategy;
+    private MyFakeMessageBus messageBus;
+
+    public MyFakeMessageBusTest(String waitStrategy)
+    {
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Before
+    public void setUp()
+    {
+        messageBus = new MyFakeMessageBus(CAPACITY, WaitStrategy.fromName(waitStrategy));
+    }
+
+    @After
+    public void tearDown()
+    {
+        messageBus.close();
+    }
+
+    @Test
+    public void send_Without_Subscriber_Never_Blocks()
+    {
+        for (int i = 0; i < CAPACITY * 10; i++)
+        {
+            messageBus.send(new BusMessage(BusMessage.USER_ADD, i));
+        }
+    }
+
+    @Test
+    public void subscribe_Receives_Messages_In_Order() throws InterruptedException
+    {
+        int messages = CAPACITY * 100;
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(messages);
+        messageBus.subscribe(message ->
+        {
+            received.add(message.getPayload());
+            done.countDown();
+        });
+
+        //
+        // The ring is much smaller than the messages sent, so the sender wraps around it many times
+        //
+        List<Object> sent = new ArrayList<>();
+        for (int i = 0; i < messages; i++)
+        {
+            messageBus.send(new BusMessage(BusMessage.USER_UPDATE, i));
+            sent.add(i);
+        }
+
+        Assert.assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        Assert.assertThat(received, is(sent));
+    }
+
+    @Test
+    public void subscribe_Several_Senders_And_Subscribers() throws InterruptedException
+    {
+        int senders = 4;
+        int messagesPerSender = 5000;
+        int[] received = new int[2];
+        CountDownLatch done = new CountDownLatch(2 * senders * messagesPerSender);
+        for (int subscriber = 0; subscriber < received.length; subscriber++)
+        {
+            int index = subscriber;
+            messageBus.subscribe(message ->
+            {
+                received[index]++;
+                done.countDown();
+            });
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int sender = 0; sender < senders; sender++)
+        {
+            Thread thread = new Thread(() ->
+            {
+                for (int i = 0; i < messagesPerSender; i++)
+                {
+                    messageBus.send(new BusMessage(BusMessage.USER_ADD, i));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        Assert.assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        Assert.assertThat(received[0], is(senders * messagesPerSender));
+        Assert.assertThat(received[1], is(senders * messagesPerSender));
+    }
+
+    @Test
+    public void subscribe_Failing_Subscriber_Keeps_Receiving() throws InterruptedException
+    {
+        CountDownLatch done = new CountDownLatch(3);
+        messageBus.subscribe(message ->
+        {
+            done.countDown();
+            throw new IllegalStateException("The subscriber has failed");
+        });
+
+        messageBus.send(new BusMessage(BusMessage.USER_ADD, 1));
+        messageBus.send(new BusMessage(BusMessage.USER_UPDATE, 2));
+        messageBus.send(new BusMessage(BusMessage.USER_DELETE, 3));
+
+        Assert.assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void unsubscribe_Releases_The_Senders() throws InterruptedException
+    {
+        messageBus.close();
+        messageBus = new MyFakeMessageBus(CAPACITY, WaitStrategy.fromName(waitStrategy), OverflowPolicy.BLOCK,
+                MyFakeMessageBus.DEFAULT_BLOCK_TIMEOUT_MILLIS, null);
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        Subscription subscription = messageBus.subscribe(message ->
+        {
+            try
+            {
+                blocked.await();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        //
+        // The subscriber is stuck on the first message, the sender fills the ring,
+        // then waits until the subscriber is removed
+        //
+        Thread sender = new Thread(() ->
+        {
+            for (int i = 0; i < CAPACITY * 2; i++)
+            {
+                messageBus.awaitSent(messageBus.send(new BusMessage(BusMessage.USER_ADD, i)));
+            }
+        });
+        sender.start();
+        sender.join(200);
+        Assert.assertThat(sender.isAlive(), is(true));
+        Assert.assertThat(subscription.getLag(), greaterThanOrEqualTo((long) CAPACITY - 1));
+
+        messageBus.unsubscribe(subscription);
+        sender.join(10_000);
+        Assert.assertThat(sender.isAlive(), is(false));
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.messaging;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Fill the bus with a subscriber stuck on its first message and check what each policy does
+ */
+public class OverflowPolicyTest
+{
+    private static final int CAPACITY = 16;
+    private static final int MESSAGES = 40;
+    private static final int BACKLOG_CAPACITY = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private MyFakeMessageBus messageBus;
+    private int sent;
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        messageBus.close();
+    }
+
+    @Test
+    public void queue_Never_Waits_And_Keeps_The_Order() throws InterruptedException
+    {
+        open(OverflowPolicy.QUEUE);
+        Assert.assertThat(sendUpTo(CAPACITY + 4), is(0L));
+        Assert.assertThat(messageBus.getDepth(), is((long) CAPACITY + 4));
+
+        release.countDown();
+        awaitReceived(CAPACITY + 4);
+        Assert.assertThat(received, is(emails(0, CAPACITY + 4)));
+        Assert.assertThat(messageBus.getDroppedMessages(), is(0L));
+    }
+
+    @Test
+    public void queue_Drops_Beyond_The_Backlog() throws InterruptedException
+    {
+        open(OverflowPolicy.QUEUE);
+        sendUpTo(CAPACITY + BACKLOG_CAPACITY + 3);
+        Assert.assertThat(messageBus.getDroppedMessages(), is(3L));
+
+        release.countDown();
+        awaitReceived(CAPACITY + BACKLOG_CAPACITY);
+        Assert.assertThat(received, is(emails(0, CAPACITY + BACKLOG_CAPACITY)));
+    }
+
+    @Test
+    public void block_Drops_After_The_Timeout()
+    {
+        open(OverflowPolicy.BLOCK);
+        long ticket = sendUpTo(CAPACITY + 1);
+        Assert.assertThat(ticket, greaterThan(0L));
+
+        messageBus.awaitSent(ticket);
+        Assert.assertThat(messageBus.getDroppedMessages(), is(1L));
+        Assert.assertThat(messageBus.getDepth(), is((long) CAPACITY));
+    }
+
+    @Test
+    public void block_Queues_The_Messages_In_Order() throws InterruptedException
+    {
+        //
+        // The sends return at once, the messages wait in the queue until the subscriber frees some slots
+        //
+        open(OverflowPolicy.BLOCK);
+        long ticket = sendUpTo(CAPACITY + 4);
+        release.countDown();
+        messageBus.awaitSent(ticket);
+
+        awaitReceived(CAPACITY + 4);
+        Assert.assertThat(received, is(emails(0, CAPACITY + 4)));
+        Assert.assertThat(messageBus.getDroppedMessages(), is(0L));
+    }
+
+    @Test
+    public void dropNewest_Keeps_The_First_Messages() throws InterruptedException
+    {
+        open(OverflowPolicy.DROP_NEWEST);
+        sendUpTo(MESSAGES);
+        Assert.assertThat(messageBus.getDroppedMessages(), is((long) (MESSAGES - CAPACITY)));
+
+        release.countDown();
+        List<String> expected = emails(0, CAPACITY);
+        awaitReceived(expected.size());
+        Assert.assertThat(received, is(expected));
+    }
+
+    @Test
+    public void dropOldest_Keeps_The_Last_Messages() throws InterruptedException
+    {
+        open(OverflowPolicy.DROP_OLDEST);
+        sendUpTo(MESSAGES);
+
+        //
+        // The subscriber gets its first message, then resumes at the oldest message left
+        //
+        release.countDown();
+        awaitReceived(1 + CAPACITY);
+        List<String> expected = emails(0, 1);
+        expected.addAll(emails(MESSAGES - CAPACITY, MESSAGES));
+        Assert.assertThat(received, is(expected));
+        Assert.assertThat(messageBus.getDroppedMessages(), is((long) (MESSAGES - CAPACITY - 1)));
+    }
+
+    @Test
+    public void spill_Keeps_All_The_Messages_In_Order() throws InterruptedException
+    {
+        open(OverflowPolicy.SPILL);
+        sendUpTo(MESSAGES);
+        Assert.assertThat(messageBus.getSpilledMessages(), is((long) (MESSAGES - CAPACITY)));
+        Assert.assertThat(messageBus.getDepth(), is((long) MESSAGES));
+
+        release.countDown();
+        awaitReceived(MESSAGES);
+        Assert.assertThat(received, is(emails(0, MESSAGES)));
+        Assert.assertThat(messageBus.getDroppedMessages(), is(0L));
+        Assert.assertThat(messageBus.getSpilledMessages(), is(0L));
+
+        //
+        // Once the file is drained, the messages go through the ring again
+        //
+        sendUpTo(MESSAGES + 1);
+        awaitReceived(MESSAGES + 1);
+    }
+
+    private void open(OverflowPolicy overflowPolicy)
+    {
+        messageBus = new MyFakeMessageBus(CAPACITY, new BlockingWaitStrategy(), overflowPolicy, 50, BACKLOG_CAPACITY,
+                folder.getRoot().toPath().resolve("spill.dat"));
+        CountDownLatch firstMessage = new CountDownLatch(1);
+        messageBus.subscribe(message ->
+        {
+            firstMessage.countDown();
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+            }
+            received.add(((User) message.getPayload()).getEmail());
+        });
+
+        //
+        // Wait until the subscriber is stuck on its first message
+        //
+        sendUpTo(1);
+        try
+        {
+            firstMessage.await();
+        }
+        catch (InterruptedException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Send the messages following the ones already sent, up to the given total
+     * @return the ticket of the last message
+     */
+    private long sendUpTo(int total)
+    {
+        long ticket = 0;
+        for (; sent < total; sent++)
+        {
+            ticket = messageBus.send(new BusMessage(BusMessage.USER_ADD, user(sent)));
+        }
+        return ticket;
+    }
+
+    private void awaitReceived(int count) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (received.size() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        Assert.assertThat(received.size(), is(count));
+    }
+
+    private static User user(int i)
+    {
+        return new User("John", "Smith", "nick" + i, "user" + i + "@gmail.com", "qwerty", "France");
+    }
+
+    private static List<String> emails(int from, int to)
+    {
+        List<String> emails = new ArrayList<>();
+        for (int i = from; i < to; i++)
+        {
+            emails.add("user" + i + "@gmail.com");
+        }
+        return emails;
+    }
+}
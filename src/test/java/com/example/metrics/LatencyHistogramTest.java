@@ -0,0 +1,37 @@
+package com.example.metrics;
+
+import static org.hamcrest.Matchers.*;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+    @Test
+    public void buckets_Cover_All_Values()
+    {
+        for (long value : new long[]{0, 1, 3, 4, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE})
+        {
+            int bucket = LatencyHistogram.bucketOf(value);
+            Assert.assertThat(LatencyHistogram.highestValueOf(bucket), greaterThanOrEqualTo(value));
+            Assert.assertThat(bucket == 0 || LatencyHistogram.highestValueOf(bucket - 1) < value, is(true));
+        }
+    }
+
+    @Test
+    public void summarize_Percentiles_Within_A_Quarter()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+
+        LatencyHistogram.Summary summary = histogram.summarize();
+        Assert.assertThat(summary.getCount(), is(1001L));
+        Assert.assertThat(summary.getP50Micros(), both(greaterThanOrEqualTo(500.0)).and(lessThanOrEqualTo(625.0)));
+        Assert.assertThat(summary.getP99Micros(), both(greaterThanOrEqualTo(990.0)).and(lessThanOrEqualTo(1000.0)));
+        Assert.assertThat(summary.getMaxMicros(), is(1000.0));
+    }
+}
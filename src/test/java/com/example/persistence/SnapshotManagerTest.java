@@ -0,0 +1,176 @@
+package com.example.persistence;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import com.example.repositories.InMemoryUserRepository;
+import com.example.services.UserServices;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class SnapshotManagerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_And_Load()
+    {
+        Path directory = folder.getRoot().toPath();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            users.add(new User("John", "Smith", "nick" + i, "user" + i + "@gmail.com", "qwerty", "France"));
+        }
+
+        SnapshotManager snapshotManager = new SnapshotManager(directory, 60);
+        snapshotManager.write(42, users);
+
+        UserMap loaded = new UserMap();
+        Assert.assertThat(snapshotManager.load(loaded), is(42L));
+        Assert.assertThat(loaded.size(), is(10000));
+        Assert.assertThat(loaded.get("user9999@gmail.com").getNickname(), is("nick9999"));
+        Assert.assertThat(loaded.get("user9999@gmail.com").getPassword(), is("qwerty"));
+    }
+
+    @Test
+    public void load_By_Windows()
+    {
+        Path directory = folder.getRoot().toPath();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            users.add(new User("John", "Smith", "nick" + i, "user" + i + "@gmail.com", "qwerty", "France"));
+        }
+
+        //
+        // The records do not fit the windows exactly, so the windows end before the records that cross them
+        //
+        SnapshotManager snapshotManager = new SnapshotManager(directory, 60, 1000);
+        snapshotManager.write(42, users);
+
+        List<Integer> batches = new ArrayList<>();
+        UserMap loaded = new UserMap()
+        {
+            @Override
+            public void onPutAll(List<List<User>> ranges)
+            {
+                batches.add(ranges.stream().mapToInt(List::size).sum());
+                super.onPutAll(ranges);
+            }
+        };
+        Assert.assertThat(snapshotManager.load(loaded), is(42L));
+        Assert.assertThat(loaded.size(), is(10000));
+        Assert.assertThat(new ArrayList<>(loaded.keySet()).get(9999), is("user9999@gmail.com"));
+        Assert.assertThat(loaded.get("user5000@gmail.com").getNickname(), is("nick5000"));
+        Assert.assertThat(batches.size(), greaterThan(100));
+    }
+
+    @Test
+    public void load_Corrupted_Snapshot() throws IOException
+    {
+        Path directory = folder.getRoot().toPath();
+        List<User> users = new ArrayList<>();
+        users.add(new User("John", "Smith", "Magic John", "john@gmail.com", "qwerty", "France"));
+
+        SnapshotManager snapshotManager = new SnapshotManager(directory, 60);
+        snapshotManager.write(1, users);
+
+        //
+        // Flip a byte of a user
+        //
+        Path snapshot = Files.list(directory).collect(Collectors.toList()).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw"))
+        {
+            file.seek(30);
+            int value = file.read();
+            file.seek(30);
+            file.write(value ^ 0xFF);
+        }
+
+        UserMap loaded = new UserMap();
+        Assert.assertThat(snapshotManager.load(loaded), is(0L));
+        Assert.assertThat(loaded.size(), is(0));
+    }
+
+    @Test
+    public void restart_UserServices() throws IOException
+    {
+        Path walDirectory = folder.newFolder("wal").toPath();
+        Path snapshotDirectory = folder.newFolder("snapshots").toPath();
+
+        WriteAheadLog writeAheadLog = new WriteAheadLog(walDirectory, FsyncPolicy.PERIODIC, 5);
+        SnapshotManager snapshotManager = new SnapshotManager(snapshotDirectory, 3600);
+        UserServices userServices = new UserServices(new InMemoryUserRepository(), Optional.of(writeAheadLog),
+                Optional.of(snapshotManager));
+
+        for (int i = 0; i < 1000; i++)
+        {
+            userServices.createUser(new User("John", "Smith", "nick" + i,
+                    "user" + i + "@gmail.com", "qwerty", "France"));
+        }
+        userServices.takeSnapshot();
+
+        //
+        // Mutations after the snapshot only exist in the log
+        //
+        userServices.updateUser(new User("John", "Smith", "nick1",
+                "user1@gmail.com", "qwerty", "England"));
+        userServices.deleteUser("user2@gmail.com");
+        userServices.createUser(new User("Mike", "Smith", "Magic Mike",
+                "mike@gmail.com", "qwerty", "Spain"));
+        userServices.takeSnapshot();
+        userServices.deleteUser("user3@gmail.com");
+        snapshotManager.close();
+        writeAheadLog.close();
+
+        //
+        // Only the segments following the last snapshot are kept
+        //
+        Assert.assertThat(Files.list(snapshotDirectory).count(), is(1L));
+        Assert.assertThat(Files.list(walDirectory).count(), lessThanOrEqualTo(2L));
+
+        writeAheadLog = new WriteAheadLog(walDirectory, FsyncPolicy.PERIODIC, 5);
+        snapshotManager = new SnapshotManager(snapshotDirectory, 3600);
+        userServices = new UserServices(new InMemoryUserRepository(), Optional.of(writeAheadLog),
+                Optional.of(snapshotManager));
+
+        Assert.assertThat(userServices.getUserRepository().size(), is(999));
+        Assert.assertThat(userServices.getAllUsers("country", "england").size(), is(1));
+        Assert.assertThat(userServices.getAllUsers("country", "spain").size(), is(1));
+        Assert.assertThat(userServices.getUserRepository().containsKey("user3@gmail.com"), is(false));
+
+        snapshotManager.close();
+        writeAheadLog.close();
+    }
+
+    /**
+     * Load the users into a map
+     */
+    private static class UserMap extends LinkedHashMap<String, User> implements MutationHandler
+    {
+        @Override
+        public void onPut(User user)
+        {
+            put(user.getEmail(), user);
+        }
+
+        @Override
+        public void onDelete(String email)
+        {
+            remove(email);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.persistence;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import com.example.exceptions.ConflictException;
+import com.example.repositories.InMemoryUserRepository;
+import com.example.services.UserServices;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class WriteAheadLogTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recover_All_Policies() throws Exception
+    {
+        for (FsyncPolicy policy : FsyncPolicy.values())
+        {
+            Path directory = folder.newFolder(policy.name()).toPath();
+
+            WriteAheadLog writeAheadLog = new WriteAheadLog(directory, policy, 5);
+            writeAheadLog.recover(new UserMap());
+
+            //
+            // Several threads log their own users
+            //
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+            {
+                int thread = t;
+                threads.add(new Thread(() ->
+                {
+                    for (int i = 0; i < 500; i++)
+                    {
+                        String email = "user" + thread + "_" + i + "@gmail.com";
+                        writeAheadLog.logCreate(new User("John", "Smith", "nick" + thread + "_" + i,
+                                email, "qwerty", "France"));
+                        writeAheadLog.logUpdate(new User("John", "Smith", "nick" + thread + "_" + i,
+                                email, "qwerty", "England"));
+                        if (i % 2 == 0)
+                        {
+                            writeAheadLog.logDelete(email);
+                        }
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            writeAheadLog.close();
+
+            UserMap users = new UserMap();
+            new WriteAheadLog(directory, policy, 5).recover(users);
+
+            Assert.assertThat(policy.name(), users.size(), is(1000));
+            Assert.assertThat(users.get("user3_499@gmail.com").getCountry(), is("england"));
+            Assert.assertThat(users.containsKey("user3_498@gmail.com"), is(false));
+        }
+    }
+
+    @Test
+    public void awaitDurable_Shared_Fsync() throws IOException
+    {
+        Path directory = folder.newFolder().toPath();
+        WriteAheadLog writeAheadLog = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 5);
+        writeAheadLog.recover(new UserMap());
+
+        long sequence = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            sequence = writeAheadLog.logCreate(new User("John", "Smith", "nick" + i,
+                    "user" + i + "@gmail.com", "qwerty", "France"), false);
+        }
+        writeAheadLog.awaitDurable(sequence);
+        Assert.assertThat(sequence, is(writeAheadLog.getLastSequence()));
+        writeAheadLog.close();
+
+        UserMap users = new UserMap();
+        new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 5).recover(users);
+        Assert.assertThat(users.size(), is(100));
+    }
+
+    @Test
+    public void recover_Torn_Tail() throws IOException
+    {
+        Path directory = folder.getRoot().toPath();
+
+        WriteAheadLog writeAheadLog = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 5);
+        writeAheadLog.recover(new UserMap());
+        writeAheadLog.logCreate(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+        writeAheadLog.logCreate(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+        writeAheadLog.close();
+
+        //
+        // Simulate a crash in the middle of a write
+        //
+        Path segment = Files.list(directory).collect(Collectors.toList()).get(0);
+        Files.write(segment, new byte[] { 0, 0, 0, 50, 1, 0, 0 }, StandardOpenOption.APPEND);
+
+        UserMap users = new UserMap();
+        writeAheadLog = new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 5);
+        writeAheadLog.recover(users);
+        Assert.assertThat(users.size(), is(2));
+
+        //
+        // The new records are appended to a new segment, and recovered as well
+        //
+        writeAheadLog.logDelete("john@gmail.com");
+        writeAheadLog.close();
+
+        users = new UserMap();
+        new WriteAheadLog(directory, FsyncPolicy.ALWAYS, 5).recover(users);
+        Assert.assertThat(users.size(), is(1));
+        Assert.assertThat(users.containsKey("francis@gmail.com"), is(true));
+    }
+
+    @Test(expected = ConflictException.class)
+    public void restart_UserServices()
+    {
+        Path directory = folder.getRoot().toPath();
+
+        WriteAheadLog writeAheadLog = new WriteAheadLog(directory, FsyncPolicy.PERIODIC, 5);
+        UserServices userServices = new UserServices(new InMemoryUserRepository(), Optional.of(writeAheadLog),
+                Optional.empty());
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+        userServices.updateUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "England" ));
+        userServices.deleteUser("francis@gmail.com");
+        writeAheadLog.close();
+
+        //
+        // Restart with an empty repository
+        //
+        writeAheadLog = new WriteAheadLog(directory, FsyncPolicy.PERIODIC, 5);
+        userServices = new UserServices(new InMemoryUserRepository(), Optional.of(writeAheadLog),
+                Optional.empty());
+
+        Assert.assertThat(userServices.getUserRepository().size(), is(1));
+        Assert.assertThat(userServices.getAllUsers("country", "england").size(), is(1));
+        Assert.assertThat(userServices.getAllUsers("country", "france").size(), is(0));
+
+        //
+        // The nickname index has been rebuilt as well
+        //
+        userServices.createUser(new User("Mike", "Smith", "Magic John",
+                "mike@gmail.com", "qwerty", "France" ));
+    }
+
+    /**
+     * Replay the mutations into a map
+     */
+    private static class UserMap extends LinkedHashMap<String, User> implements MutationHandler
+    {
+        @Override
+        public void onPut(User user)
+        {
+            put(user.getEmail(), user);
+        }
+
+        @Override
+        public void onDelete(String email)
+        {
+            remove(email);
+        }
+    }
+}
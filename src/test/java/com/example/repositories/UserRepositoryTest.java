@@ -0,0 +1,199 @@
+package com.example.repositories;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Run the same tests against every {@link UserRepository} backend
+ */
+@RunWith(Parameterized.class)
+public class UserRepositoryTest
+{
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> backends()
+    {
+        return Arrays.asList(new Object[][] { { "memory" }, { "offheap" }, { "file" } });
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String backend;
+    private Path filePath;
+    private UserRepository userRepository;
+
+    public UserRepositoryTest(String backend)
+    {
+        this.backend = backend;
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        filePath = folder.getRoot().toPath().resolve("users.dat");
+        userRepository = open();
+    }
+
+    @After
+    public void tearDown()
+    {
+        userRepository.close();
+    }
+
+    @Test
+    public void put_And_Get()
+    {
+        User user = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        Assert.assertThat(userRepository.put("john@gmail.com", user), nullValue());
+
+        User stored = userRepository.get("john@gmail.com");
+        Assert.assertThat(stored.equals(user), is(true));
+        Assert.assertThat(stored.getPassword(), is("qwerty"));
+        Assert.assertThat(userRepository.containsKey("john@gmail.com"), is(true));
+        Assert.assertThat(userRepository.get("francis@gmail.com"), nullValue());
+    }
+
+    @Test
+    public void put_Replace()
+    {
+        User user1 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user2 = new User("John", "Scott", "Magic John",
+                "john@gmail.com", "qwerty", "England" );
+
+        userRepository.put("john@gmail.com", user1);
+        User previous = userRepository.put("john@gmail.com", user2);
+
+        Assert.assertThat(previous.equals(user1), is(true));
+        Assert.assertThat(userRepository.get("john@gmail.com").equals(user2), is(true));
+        Assert.assertThat(userRepository.size(), is(1));
+    }
+
+    @Test
+    public void remove_And_Iterate()
+    {
+        for (int i = 0; i < 100; i++)
+        {
+            userRepository.put("user" + i + "@gmail.com", new User("John", "Smith", "nick" + i,
+                    "user" + i + "@gmail.com", "qwerty", "France"));
+        }
+
+        for (int i = 0; i < 100; i += 2)
+        {
+            Assert.assertThat(userRepository.remove("user" + i + "@gmail.com").getNickname(), is("nick" + i));
+        }
+        Assert.assertThat(userRepository.remove("user0@gmail.com"), nullValue());
+
+        Set<String> emails = new HashSet<>();
+        for (User user : userRepository)
+        {
+            emails.add(user.getEmail());
+        }
+        Assert.assertThat(userRepository.size(), is(50));
+        Assert.assertThat(emails.size(), is(50));
+        Assert.assertThat(emails.contains("user1@gmail.com"), is(true));
+        Assert.assertThat(emails.contains("user2@gmail.com"), is(false));
+    }
+
+    @Test
+    public void put_Many_Updates()
+    {
+        //
+        // Enough updates to fill several chunks, or to trigger a compaction of the file
+        //
+        for (int i = 0; i < 20000; i++)
+        {
+            userRepository.put("user" + (i % 10) + "@gmail.com", new User("John", "Smith", "nick" + i,
+                    "user" + (i % 10) + "@gmail.com", "qwerty", "France"));
+        }
+
+        Assert.assertThat(userRepository.size(), is(10));
+        Assert.assertThat(userRepository.get("user3@gmail.com").getNickname(), is("nick19993"));
+    }
+
+    @Test
+    public void offHeap_Footprint_Stays_Bounded()
+    {
+        if (!backend.equals("offheap"))
+        {
+            return;
+        }
+
+        //
+        // Every chunk gets a few users which are never updated, so no chunk would ever be free of live records
+        //
+        for (int i = 0; i < 100000; i++)
+        {
+            userRepository.put("hot" + (i % 10) + "@gmail.com", new User("John", "Smith", "nick" + i,
+                    "hot" + (i % 10) + "@gmail.com", "qwerty", "France"));
+            if (i % 50 == 0)
+            {
+                userRepository.put("cold" + i + "@gmail.com", new User("Marie", "Henry", "cold" + i,
+                        "cold" + i + "@gmail.com", "henry", "France"));
+            }
+        }
+
+        long liveBytes = 0;
+        for (User user : userRepository)
+        {
+            liveBytes += Integer.BYTES + UserRecordCodec.encode(user).length;
+        }
+        long allocatedBytes = (long) ((OffHeapUserRepository) userRepository).chunkCount() * 64 * 1024;
+        Assert.assertThat(allocatedBytes, lessThanOrEqualTo(2 * liveBytes + 2 * 64 * 1024));
+        Assert.assertThat(userRepository.size(), is(2010));
+        Assert.assertThat(userRepository.get("cold50@gmail.com").getNickname(), is("cold50"));
+        Assert.assertThat(userRepository.get("hot3@gmail.com").getNickname(), is("nick99993"));
+    }
+
+    @Test
+    public void reopen_File()
+    {
+        if (!backend.equals("file"))
+        {
+            return;
+        }
+
+        userRepository.put("john@gmail.com", new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" ));
+        userRepository.put("francis@gmail.com", new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" ));
+        userRepository.remove("john@gmail.com");
+        userRepository.close();
+
+        userRepository = open();
+        Assert.assertThat(userRepository.size(), is(1));
+        Assert.assertThat(userRepository.get("francis@gmail.com").getNickname(), is("magic francis"));
+    }
+
+    private UserRepository open()
+    {
+        switch (backend)
+        {
+            case "offheap":
+                return new OffHeapUserRepository(64 * 1024);
+            case "file":
+                return new FileUserRepository(filePath, 64 * 1024);
+            default:
+                return new InMemoryUserRepository();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.services;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UserColumnsTest
+{
+    @Test
+    public void probe_Follows_Updates_And_Deletions()
+    {
+        UserColumns columns = new UserColumns();
+        columns.add(new User("Thierry", "Henry", "King Henry", "thierry@gmail.com", "henry", "France"), 1);
+        columns.add(new User("John", "Smith", "Magic John", "john@gmail.com", "qwerty", "England"), 2);
+        columns.add(new User("Marie", "Henry", "Queen Henry", "marie@gmail.com", "henry", "France"), 3);
+
+        UserColumns.Probe frenchHenry = probe(columns, "country=france AND lastname=henry");
+        Assert.assertThat(frenchHenry.test(1, "thierry@gmail.com"), is(true));
+        Assert.assertThat(frenchHenry.test(2, "john@gmail.com"), is(false));
+        Assert.assertThat(frenchHenry.test(3, "marie@gmail.com"), is(true));
+        Assert.assertThat(probe(columns, "country=spain").test(1, "thierry@gmail.com"), is(false));
+
+        columns.update(new User("John", "Smith", "Magic John", "john@gmail.com", "qwerty", "France"));
+        Assert.assertThat(columns.remove("thierry@gmail.com"), is(1L));
+
+        UserColumns.Probe french = probe(columns, "country=france");
+        Assert.assertThat(french.test(1, "thierry@gmail.com"), is(false));
+        Assert.assertThat(french.test(2, "john@gmail.com"), is(true));
+        Assert.assertThat(columns.size(), is(2));
+    }
+
+    @Test
+    public void add_Reuses_The_Slots_Of_Deleted_Users()
+    {
+        UserColumns columns = new UserColumns();
+        for (int i = 0; i < 10000; i++)
+        {
+            columns.add(new User("John", "Smith", "nick" + i, "john" + i + "@gmail.com", "qwerty", "France"), i + 1);
+        }
+        for (int i = 0; i < 10000; i += 2)
+        {
+            columns.remove("john" + i + "@gmail.com");
+        }
+        columns.add(new User("Marie", "Henry", "Queen Henry", "marie@gmail.com", "henry", "England"), 10001);
+        columns.add(new User("John", "Smith", "nick0", "john0@gmail.com", "qwerty", "France"), 10002);
+
+        Assert.assertThat(columns.rowId("marie@gmail.com"), is(10001L));
+        Assert.assertThat(columns.rowId("john9999@gmail.com"), is(10000L));
+        Assert.assertThat(probe(columns, "country=england").test(10001, "marie@gmail.com"), is(true));
+
+        //
+        // A candidate read from an index before the user was deleted and created again is stale
+        //
+        UserColumns.Probe french = probe(columns, "country=france");
+        Assert.assertThat(french.test(1, "john0@gmail.com"), is(false));
+        Assert.assertThat(french.test(10002, "john0@gmail.com"), is(true));
+    }
+
+    private static UserColumns.Probe probe(UserColumns columns, String query)
+    {
+        return columns.probe(UserQuery.parse(query).getGroups().get(0));
+    }
+}
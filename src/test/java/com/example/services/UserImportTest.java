@@ -0,0 +1,141 @@
+package com.example.services;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import com.example.exceptions.ConflictException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class UserImportTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UserServices userServices;
+
+    @Before
+    public void setUp()
+    {
+        userServices = new UserServices();
+    }
+
+    @Test
+    public void importUsers_Csv() throws IOException
+    {
+        Path file = write("users.csv",
+                "email,firstname,lastname,nickname,password,country\r\n" +
+                "john@gmail.com,John,Smith,Magic John,qwerty,France\r\n" +
+                "francis@gmail.com,Francis,\"Smith, \"\"Jr\"\"\",Magic Francis,qwerty,England\r\n");
+
+        Assert.assertThat(userServices.importUsers(file), is(2));
+
+        User francis = userServices.getUser("francis@gmail.com");
+        Assert.assertThat(francis.getLastname(), is("smith, \"jr\""));
+        Assert.assertThat(userServices.getAllUsers("country", "England").size(), is(1));
+    }
+
+    @Test
+    public void importUsers_Ndjson_Keeps_The_Order_Of_The_File() throws IOException
+    {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+        {
+            lines.append("{\"firstname\":\"John\",\"lastname\":\"Smith\",\"nickname\":\"Magic John ").append(i)
+                    .append("\",\"email\":\"john").append(i).append("@gmail.com\",\"password\":\"qwerty\",")
+                    .append("\"country\":\"France\"}\n");
+        }
+        Path file = write("users.ndjson", lines.toString());
+
+        Assert.assertThat(userServices.importUsers(file), is(5000));
+
+        //
+        // A user created after the import is listed after the users imported
+        //
+        userServices.createUser(new User("Adam", "Smith", "Magic Adam",
+                "adam@gmail.com", "qwerty", "France"));
+        List<User> users = userServices.getAllUsers("lastname", "smith");
+        Assert.assertThat(users.size(), is(5001));
+        for (int i = 0; i < 5000; i++)
+        {
+            Assert.assertThat(users.get(i).getEmail(), is("john" + i + "@gmail.com"));
+        }
+        Assert.assertThat(users.get(5000).getEmail(), is("adam@gmail.com"));
+    }
+
+    @Test
+    public void parse_Ranges_Split_On_Lines() throws IOException
+    {
+        StringBuilder lines = new StringBuilder("firstname,lastname,nickname,email,password,country\n");
+        for (int i = 0; i < 1000; i++)
+        {
+            lines.append("John,Smith,nick").append(i).append(",john").append(i).append("@gmail.com,qwerty,France\n");
+        }
+        Path file = write("users.csv", lines.toString());
+
+        List<List<User>> ranges = UserFileParser.parse(file, 4);
+
+        Assert.assertThat(ranges.size(), greaterThan(1));
+        List<String> emails = ranges.stream().flatMap(List::stream).map(User::getEmail).collect(Collectors.toList());
+        Assert.assertThat(emails.size(), is(1000));
+        Assert.assertThat(emails.get(999), is("john999@gmail.com"));
+    }
+
+    @Test
+    public void importUsers_Invalid_Line_Imports_Nothing() throws IOException
+    {
+        Path file = write("users.csv",
+                "firstname,lastname,nickname,email,password,country\n" +
+                "John,Smith,Magic John,john@gmail.com,qwerty,France\n" +
+                "Francis,Smith,Magic Francis,francis,qwerty,France\n");
+
+        try
+        {
+            userServices.importUsers(file);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException exception)
+        {
+            Assert.assertThat(exception.getMessage(), containsString("francis"));
+        }
+        Assert.assertThat(userServices.getAllUsers(null, null).size(), is(0));
+    }
+
+    @Test
+    public void importUsers_Conflict_Imports_Nothing() throws IOException
+    {
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France"));
+        Path file = write("users.csv",
+                "firstname,lastname,nickname,email,password,country\n" +
+                "John,Smith,Magic John,john@gmail.com,qwerty,France\n" +
+                "John,Scott,Magic Francis,john2@gmail.com,qwerty,France\n");
+
+        try
+        {
+            userServices.importUsers(file);
+            Assert.fail();
+        }
+        catch (ConflictException exception)
+        {
+            Assert.assertThat(userServices.getAllUsers(null, null).size(), is(1));
+        }
+    }
+
+    private Path write(String name, String content) throws IOException
+    {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
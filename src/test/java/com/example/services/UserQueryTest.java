@@ -0,0 +1,150 @@
+package com.example.services;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.Criteria;
+import com.example.entities.User;
+import com.example.entities.UserPage;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+public class UserQueryTest
+{
+    private UserServices userServices;
+
+    @Before
+    public void setUp()
+    {
+        userServices = new UserServices();
+        userServices.createUser(new User("Thierry", "Henry", "King Henry",
+                "thierry@gmail.com", "henry", "France"));
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "England"));
+        userServices.createUser(new User("Marie", "Henry", "Queen Henry",
+                "marie@gmail.com", "henry", "England"));
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France"));
+    }
+
+    @Test
+    public void queryUsers_And()
+    {
+        Assert.assertThat(emails("country=england AND lastname=henry"), contains("marie@gmail.com"));
+        Assert.assertThat(emails("country=Spain AND lastname=henry").isEmpty(), is(true));
+    }
+
+    @Test
+    public void queryUsers_Lowercase_Keywords()
+    {
+        Assert.assertThat(emails("country=england and lastname=henry"), contains("marie@gmail.com"));
+        Assert.assertThat(emails("nickname=magic john Or nickname=king henry"),
+                contains("thierry@gmail.com", "john@gmail.com"));
+    }
+
+    @Test
+    public void queryUsers_Quoted_Value_With_Keywords()
+    {
+        userServices.createUser(new User("Peter", "Sandor", "Rock or Roll",
+                "peter@gmail.com", "qwerty", "Hungary"));
+
+        Assert.assertThat(emails("nickname=\"rock or roll\" or lastname=smith"),
+                contains("john@gmail.com", "francis@gmail.com", "peter@gmail.com"));
+        Assert.assertThat(emails("lastname=sandor AND country=hungary"), contains("peter@gmail.com"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryUsers_Unquoted_Value_With_Keywords()
+    {
+        userServices.queryUsers("nickname=rock or roll", 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryUsers_Unclosed_Quote()
+    {
+        userServices.queryUsers("nickname=\"rock or roll", 10, null);
+    }
+
+    @Test
+    public void queryUsers_Or_In_Creation_Order()
+    {
+        Assert.assertThat(emails("lastname=henry OR country=france"),
+                contains("thierry@gmail.com", "marie@gmail.com", "francis@gmail.com"));
+        Assert.assertThat(emails("nickname=magic john OR country=france AND lastname=smith"),
+                contains("john@gmail.com", "francis@gmail.com"));
+    }
+
+    @Test
+    public void queryUsers_Pages_Of_A_Disjunction()
+    {
+        UserPage page = userServices.queryUsers("lastname=henry OR lastname=smith", 3, null);
+        Assert.assertThat(page.getUsers().size(), is(3));
+
+        page = userServices.queryUsers("lastname=henry OR lastname=smith", 3, page.getNextCursor());
+        Assert.assertThat(page.getUsers().size(), is(1));
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("francis@gmail.com"));
+        Assert.assertThat(page.getNextCursor(), nullValue());
+    }
+
+    @Test
+    public void queryUsers_Follows_Updates()
+    {
+        userServices.updateUser(new User("Marie", "Henry", "Queen Henry",
+                "marie@gmail.com", "henry", "France"));
+        userServices.deleteUser("thierry@gmail.com");
+
+        Assert.assertThat(emails("country=france AND lastname=henry"), contains("marie@gmail.com"));
+    }
+
+    @Test
+    public void plan_Reads_The_Most_Selective_Index_First()
+    {
+        CriteriaIndex criteriaIndex = new CriteriaIndex();
+        long rowId = 0;
+        for (int i = 0; i < 100; i++)
+        {
+            criteriaIndex.add(new User("John", "Smith", "nick" + i, "john" + i + "@gmail.com", "qwerty",
+                    i < 90 ? "France" : "England"), ++rowId);
+        }
+        QueryPlanner planner = new QueryPlanner(criteriaIndex, new UserColumns(), new ConcurrentSkipListMap<>());
+
+        List<QueryPlanner.GroupPlan> plans = planner.plan(
+                UserQuery.parse("country=france AND firstname=john AND country=england"));
+        Assert.assertThat(plans.get(0).toString(), startsWith("read country=england (10 users)"));
+        Assert.assertThat(plans.get(0).getEstimate(), is(10L));
+
+        //
+        // The statistics follow the changes of the users
+        //
+        criteriaIndex.remove(new User("John", "Smith", "nick99", "john99@gmail.com", "qwerty", "England"), 100);
+        Assert.assertThat(criteriaIndex.posting(Criteria.COUNTRY, "england").users(), is(9));
+        Assert.assertThat(criteriaIndex.distinctValues(Criteria.COUNTRY), is(2));
+
+        //
+        // A group with a value no user has is not read at all
+        //
+        Assert.assertThat(planner.plan(UserQuery.parse("country=spain AND firstname=john")).isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryUsers_Unknown_Criteria()
+    {
+        userServices.queryUsers("password=henry", 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryUsers_Missing_Value()
+    {
+        userServices.queryUsers("country= AND lastname=henry", 10, null);
+    }
+
+    private List<String> emails(String query)
+    {
+        return userServices.queryUsers(query, Integer.MAX_VALUE, null).getUsers().stream()
+                .map(User::getEmail).collect(Collectors.toList());
+    }
+}
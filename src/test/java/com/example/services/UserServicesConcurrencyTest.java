@@ -0,0 +1,147 @@
+package com.example.services;
+
+import static org.hamcrest.Matchers.*;
+
+import com.example.entities.User;
+import com.example.exceptions.ConflictException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress tests running the user services from several threads at once
+ */
+public class UserServicesConcurrencyTest
+{
+    private static final int USERS_PER_THREAD = 2000;
+
+    private UserServices userServices;
+
+    @Before
+    public void setUp()
+    {
+        userServices = new UserServices();
+    }
+
+    @Test
+    public void createUser_Concurrent_Duplicated_Nicknames() throws Exception
+    {
+        int threads = 8;
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        //
+        // All threads try to create users with the same nicknames,
+        // each nickname must be given to a single user
+        //
+        runConcurrently(threads, thread ->
+        {
+            for (int i = 0; i < USERS_PER_THREAD; i++)
+            {
+                try
+                {
+                    userServices.createUser(new User("John", "Smith", "nick" + i,
+                            "john" + thread + "_" + i + "@gmail.com", "qwerty", "France"));
+                    created.incrementAndGet();
+                }
+                catch (ConflictException exception)
+                {
+                    conflicts.incrementAndGet();
+                }
+            }
+        });
+
+        Assert.assertThat(created.get(), is(USERS_PER_THREAD));
+        Assert.assertThat(conflicts.get(), is(USERS_PER_THREAD * (threads - 1)));
+        Assert.assertThat(userServices.getUserRepository().size(), is(USERS_PER_THREAD));
+
+        Set<String> nicknames = new HashSet<>();
+        for (User user : userServices.getAllUsers(null, null))
+        {
+            Assert.assertThat(nicknames.add(user.getNickname()), is(true));
+        }
+    }
+
+    @Test
+    public void writeUser_Concurrent_Indexes_Consistent() throws Exception
+    {
+        int threads = 8;
+
+        //
+        // Each thread creates its users in France, moves them to England
+        // and deletes every other one
+        //
+        runConcurrently(threads, thread ->
+        {
+            for (int i = 0; i < USERS_PER_THREAD; i++)
+            {
+                String email = "user" + thread + "_" + i + "@gmail.com";
+                userServices.createUser(new User("John", "Smith", "nick" + thread + "_" + i,
+                        email, "qwerty", "France"));
+                userServices.updateUser(new User("John", "Smith", "nick" + thread + "_" + i,
+                        email, "qwerty", "England"));
+                if (i % 2 == 0)
+                {
+                    userServices.deleteUser(email);
+                }
+            }
+        });
+
+        int expected = threads * USERS_PER_THREAD / 2;
+        Assert.assertThat(userServices.getUserRepository().size(), is(expected));
+        Assert.assertThat(userServices.getAllUsers("country", "france").size(), is(0));
+        Assert.assertThat(userServices.getAllUsers("country", "england").size(), is(expected));
+        Assert.assertThat(userServices.getAllUsers("firstname", "john").size(), is(expected));
+    }
+
+    private interface ThreadTask
+    {
+        void run(int thread);
+    }
+
+    /**
+     * Run the task on the given number of threads, all starting at the same time
+     * Rethrow the first failure of a thread
+     */
+    private static void runConcurrently(int threads, ThreadTask task) throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+            {
+                int thread = i;
+                Callable<Void> callable = () ->
+                {
+                    start.await();
+                    task.run(thread);
+                    return null;
+                };
+                futures.add(executor.submit(callable));
+            }
+
+            start.countDown();
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
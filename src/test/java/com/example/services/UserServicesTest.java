@@ -2,7 +2,11 @@ package com.example.services;
 
 import static org.hamcrest.Matchers.*;
 
+import com.example.entities.BulkOperation;
+import com.example.entities.FacetCount;
+import com.example.entities.NicknameMatch;
 import com.example.entities.User;
+import com.example.entities.UserPage;
 import com.example.exceptions.ConflictException;
 import com.example.exceptions.NotFoundException;
 import com.example.exceptions.UnauthorizedException;
@@ -10,7 +14,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class UserServicesTest
 {
@@ -121,6 +128,50 @@ public class UserServicesTest
         userServices.updateUser(user2);
     }
 
+    @Test(expected = ConflictException.class)
+    public void updateUser_duplicated_nickname()
+    {
+        User user1 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user2 = new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" );
+
+        User user3 = new User("Francis", "Smith", "Magic John",
+                "francis@gmail.com", "qwerty", "France" );
+
+        userServices.createUser(user1);
+        userServices.createUser(user2);
+
+        //
+        // Francis takes the nickname of John
+        // should throw an exception
+        //
+        userServices.updateUser(user3);
+    }
+
+    @Test
+    public void updateUser_Nickname_Released()
+    {
+        User user1 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user2 = new User("John", "Smith", "John is Magic",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user3 = new User("Francis", "Smith", "Magic John",
+                "francis@gmail.com", "qwerty", "France" );
+
+        userServices.createUser(user1);
+        userServices.updateUser(user2);
+
+        //
+        // The former nickname of John can now be used
+        //
+        userServices.createUser(user3);
+        Assert.assertThat(userServices.getUserRepository().size(), is(2));
+    }
+
     @Test
     public void updateUser_OK()
     {
@@ -291,5 +342,295 @@ public class UserServicesTest
 
     }
 
+    @Test
+    public void getAllUsers_Criteria_After_Update()
+    {
+        User user1 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user2 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "England" );
+
+        userServices.createUser(user1);
+        userServices.updateUser(user2);
+
+        //
+        // The user has moved from France to England
+        //
+        Assert.assertThat(userServices.getAllUsers("country", "France").size(), is(0));
+
+        List<User> users = userServices.getAllUsers("country", "England");
+        Assert.assertThat(users.size(), is(1));
+        Assert.assertThat(users.get(0).equals(user2), is(true));
+    }
+
+    @Test
+    public void getAllUsers_Criteria_After_Delete()
+    {
+        User user1 = new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France" );
+
+        User user2 = new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France" );
+
+        userServices.createUser(user1);
+        userServices.createUser(user2);
+        userServices.deleteUser("john@gmail.com");
+
+        //
+        // Only Francis should remain
+        //
+        List<User> users = userServices.getAllUsers("lastname", "smith");
+        Assert.assertThat(users.size(), is(1));
+        Assert.assertThat(users.get(0).equals(user2), is(true));
+    }
+
+    @Test
+    public void getAllUsers_Pages()
+    {
+        for (int i = 0; i < 25; i++)
+        {
+            userServices.createUser(new User("John", "Smith", "Magic John " + i,
+                    "john" + i + "@gmail.com", "qwerty", i % 2 == 0 ? "France" : "England"));
+        }
+
+        //
+        // Read all users, 10 per page, in the order they have been created
+        //
+        UserPage page = userServices.getAllUsers(null, null, 10, null);
+        Assert.assertThat(page.getUsers().size(), is(10));
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("john0@gmail.com"));
+
+        page = userServices.getAllUsers(null, null, 10, page.getNextCursor());
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("john10@gmail.com"));
+
+        page = userServices.getAllUsers(null, null, 10, page.getNextCursor());
+        Assert.assertThat(page.getUsers().size(), is(5));
+        Assert.assertThat(page.getNextCursor(), nullValue());
+
+        //
+        // The 13 users in France, 5 per page
+        //
+        page = userServices.getAllUsers("country", "france", 5, null);
+        Assert.assertThat(page.getUsers().get(1).getEmail(), is("john2@gmail.com"));
+        page = userServices.getAllUsers("country", "france", 5, page.getNextCursor());
+        page = userServices.getAllUsers("country", "france", 5, page.getNextCursor());
+        Assert.assertThat(page.getUsers().size(), is(3));
+        Assert.assertThat(page.getUsers().get(2).getEmail(), is("john24@gmail.com"));
+    }
+
+    @Test
+    public void getAllUsers_Pages_Stable_Under_Mutations()
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            userServices.createUser(new User("John", "Smith", "Magic John " + i,
+                    "john" + i + "@gmail.com", "qwerty", "France"));
+        }
+        UserPage page = userServices.getAllUsers("lastname", "smith", 5, null);
+        Assert.assertThat(page.getUsers().get(4).getEmail(), is("john4@gmail.com"));
+
+        //
+        // Deleting users already read and creating new users does not move the next page
+        //
+        userServices.deleteUser("john0@gmail.com");
+        userServices.deleteUser("john3@gmail.com");
+        userServices.createUser(new User("Adam", "Smith", "Magic Adam",
+                "adam@gmail.com", "qwerty", "France"));
+
+        page = userServices.getAllUsers("lastname", "smith", 5, page.getNextCursor());
+        Assert.assertThat(page.getUsers().size(), is(5));
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("john5@gmail.com"));
+        Assert.assertThat(page.getUsers().get(4).getEmail(), is("john9@gmail.com"));
+
+        page = userServices.getAllUsers("lastname", "smith", 5, page.getNextCursor());
+        Assert.assertThat(page.getUsers().size(), is(1));
+        Assert.assertThat(page.getUsers().get(0).getEmail(), is("adam@gmail.com"));
+        Assert.assertThat(page.getNextCursor(), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getAllUsers_Invalid_Cursor()
+    {
+        userServices.getAllUsers(null, null, 10, "not a cursor");
+    }
+
+    @Test
+    public void applyBulk_Per_Operation_Failures()
+    {
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France"));
+
+        List<RuntimeException> failures = userServices.applyBulk(Arrays.asList(
+                new BulkOperation(BulkOperation.CREATE, new User("John", "Smith", "Magic John",
+                        "john@gmail.com", "qwerty", "France"), null),
+                new BulkOperation(BulkOperation.CREATE, new User("Francis", "Scott", "Francis is Magic",
+                        "francis@gmail.com", "qwerty", "France"), null),
+                new BulkOperation(BulkOperation.UPDATE, new User("John", "Smith", "Magic John",
+                        "john@gmail.com", "qwerty", "England"), null),
+                new BulkOperation(BulkOperation.UPDATE, new User("Francis", "Smith", "Magic Francis",
+                        "francis@gmail.com", "wrong", "England"), null),
+                new BulkOperation(BulkOperation.DELETE, null, "adam@gmail.com"),
+                new BulkOperation("rename", null, "francis@gmail.com")));
+
+        Assert.assertThat(failures.get(0), nullValue());
+        Assert.assertThat(failures.get(1), instanceOf(ConflictException.class));
+        Assert.assertThat(failures.get(2), nullValue());
+        Assert.assertThat(failures.get(3), instanceOf(UnauthorizedException.class));
+        Assert.assertThat(failures.get(4), instanceOf(NotFoundException.class));
+        Assert.assertThat(failures.get(5), instanceOf(IllegalArgumentException.class));
+
+        //
+        // The operations on a same user are applied in the order of the list
+        //
+        Assert.assertThat(userServices.getUser("john@gmail.com").getCountry(), is("england"));
+        Assert.assertThat(userServices.getUser("francis@gmail.com").getCountry(), is("france"));
+    }
+
+    @Test
+    public void applyBulk_Many_Chunks()
+    {
+        List<BulkOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+        {
+            operations.add(new BulkOperation(BulkOperation.CREATE, new User("John", "Smith", "Magic John " + i,
+                    "john" + i + "@gmail.com", "qwerty", "France"), null));
+        }
+        operations.add(new BulkOperation(BulkOperation.DELETE, null, "john0@gmail.com"));
+
+        List<RuntimeException> failures = userServices.applyBulk(operations);
+
+        Assert.assertThat(failures.size(), is(3001));
+        Assert.assertThat(failures, everyItem(nullValue(RuntimeException.class)));
+        List<User> users = userServices.getAllUsers(null, null);
+        Assert.assertThat(users.size(), is(2999));
+        Assert.assertThat(users.get(0).getEmail(), is("john1@gmail.com"));
+    }
+
+    @Test
+    public void autocomplete_Prefix()
+    {
+        userServices.createUser(new User("Thierry", "Henry", "King Henry",
+                "thierry@gmail.com", "henry", "France"));
+        userServices.createUser(new User("Henri", "Smith", "Magic Henri",
+                "henri@gmail.com", "qwerty", "France"));
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France"));
+
+        //
+        // Sorted by the matching name, a user matching twice is returned once
+        //
+        List<String> emails = userServices.autocomplete("HEN", null, 10).stream()
+                .map(User::getEmail).collect(Collectors.toList());
+        Assert.assertThat(emails, contains("henri@gmail.com", "thierry@gmail.com"));
+
+        Assert.assertThat(userServices.autocomplete("magic", "nickname", 1).get(0).getEmail(),
+                is("henri@gmail.com"));
+        Assert.assertThat(userServices.autocomplete("magic", "lastname", 10).isEmpty(), is(true));
+
+        //
+        // The index follows the updates and deletions
+        //
+        userServices.updateUser(new User("Henri", "Smith", "Wizard Henri",
+                "henri@gmail.com", "qwerty", "France"));
+        userServices.deleteUser("john@gmail.com");
+        Assert.assertThat(userServices.autocomplete("magic", null, 10).isEmpty(), is(true));
+        Assert.assertThat(userServices.autocomplete("wiz", null, 10).size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void autocomplete_Invalid_Field()
+    {
+        userServices.autocomplete("fra", "country", 10);
+    }
+
+    @Test
+    public void lockTimes_And_IndexSizes()
+    {
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "England"));
+        userServices.updateUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France"));
+
+        Assert.assertThat(userServices.getLockWaitTimes().summarize().getCount(), is(2L));
+        Assert.assertThat(userServices.getLockHoldTimes().summarize().getCount(), is(2L));
+        Assert.assertThat(userServices.getIndexSizes().get("users"), is(1));
+        Assert.assertThat(userServices.getIndexSizes().get("countryValues"), is(1));
+    }
+
+    @Test
+    public void countUsers_And_Facet()
+    {
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "England"));
+        userServices.createUser(new User("Marie", "Henry", "Queen Henry",
+                "marie@gmail.com", "henry", "England"));
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France"));
+
+        Assert.assertThat(userServices.countUsers(null, null), is(3));
+        Assert.assertThat(userServices.countUsers("country", "ENGLAND"), is(2));
+        Assert.assertThat(userServices.countUsers("country", "spain"), is(0));
+
+        List<FacetCount> countries = userServices.facet("country", 10);
+        Assert.assertThat(countries.size(), is(2));
+        Assert.assertThat(countries.get(0).getValue(), is("england"));
+        Assert.assertThat(countries.get(0).getCount(), is(2));
 
+        //
+        // The counts follow the changes, a value without users is left out, ties are in alphabetical order
+        //
+        userServices.updateUser(new User("Marie", "Henry", "Queen Henry",
+                "marie@gmail.com", "henry", "Spain"));
+        userServices.deleteUser("francis@gmail.com");
+        countries = userServices.facet("country", 1);
+        Assert.assertThat(countries.size(), is(1));
+        Assert.assertThat(countries.get(0).getValue(), is("england"));
+        Assert.assertThat(countries.get(0).getCount(), is(1));
+        Assert.assertThat(userServices.facet("country", 10).size(), is(2));
+        Assert.assertThat(userServices.countUsers(null, null), is(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void facet_Unknown_Criteria()
+    {
+        userServices.facet("age", 10);
+    }
+
+    @Test
+    public void searchNickname_Closest_First()
+    {
+        userServices.createUser(new User("John", "Smith", "Magic John",
+                "john@gmail.com", "qwerty", "France"));
+        userServices.createUser(new User("Johnny", "Smith", "Magic Johnny",
+                "johnny@gmail.com", "qwerty", "France"));
+        userServices.createUser(new User("Francis", "Smith", "Magic Francis",
+                "francis@gmail.com", "qwerty", "France"));
+
+        List<NicknameMatch> matches = userServices.searchNickname("Magik Jon", 2, 10);
+        Assert.assertThat(matches.size(), is(1));
+        Assert.assertThat(matches.get(0).getUser().getEmail(), is("john@gmail.com"));
+        Assert.assertThat(matches.get(0).getDistance(), is(2));
+
+        matches = userServices.searchNickname("magic johnyy", 2, 10);
+        Assert.assertThat(matches.get(0).getUser().getEmail(), is("johnny@gmail.com"));
+        Assert.assertThat(matches.get(1).getUser().getEmail(), is("john@gmail.com"));
+
+        //
+        // The index follows the changes of nicknames
+        //
+        userServices.updateUser(new User("John", "Smith", "Wizard John",
+                "john@gmail.com", "qwerty", "France"));
+        Assert.assertThat(userServices.searchNickname("magic jon", 2, 10).isEmpty(), is(true));
+        Assert.assertThat(userServices.searchNickname("wizard jon", 1, 10).size(), is(1));
+    }
+
+    @Test
+    public void distance_Bounded()
+    {
+        int[][] rows = new int[2][16];
+        Assert.assertThat(TrigramIndex.distance("kitten", "sitting", 3, rows), is(3));
+        Assert.assertThat(TrigramIndex.distance("kitten", "sitting", 2, rows), is(3));
+        Assert.assertThat(TrigramIndex.distance("john", "john", 0, rows), is(0));
+    }
 }